@@ -0,0 +1,82 @@
+package Compression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * arithmetic coding kernels: adaptive model update, symbol search in the
+ * cumulative frequencies, and the whole codec
+ * @author Hang Yuan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArithBenchmark {
+
+    @Param({"testFile2", "testFile3", "random", "zeros", "LaserTower.bmp"})
+    public String corpus;
+
+    byte[] data;
+    FrequencyModel trained;
+    int[] targets;
+    ByteBuffer encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        data = Corpus.load(corpus);
+        trained = newModel();
+        for (int i = 0; i < data.length; i++) {
+            trained.update(data[i] & 0xFF);
+        }
+        // a target inside the range of each byte, as the decoder sees it
+        targets = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            int s = data[i] & 0xFF;
+            targets[i] = trained.cumFreq(s) + trained.freq(s) / 2;
+        }
+        encoded = new ArithCoder().compress(ByteBuffer.wrap(data));
+    }
+
+    @Benchmark
+    public int modelUpdate(ByteCounter counter) {
+        FrequencyModel model = newModel();
+        for (int i = 0; i < data.length; i++) {
+            model.update(data[i] & 0xFF);
+        }
+        counter.bytes += data.length;
+        return model.total();
+    }
+
+    @Benchmark
+    public int findSymbol(ByteCounter counter) {
+        int sum = 0;
+        for (int i = 0; i < targets.length; i++) {
+            sum += trained.findSymbol(targets[i]);
+        }
+        counter.bytes += data.length;
+        return sum;
+    }
+
+    @Benchmark
+    public int encode(ByteCounter counter) throws IOException {
+        ByteBuffer out = new ArithCoder().compress(ByteBuffer.wrap(data));
+        counter.bytes += data.length;
+        return out.remaining();
+    }
+
+    @Benchmark
+    public int decode(ByteCounter counter) throws IOException {
+        ByteBuffer out = new ArithCoder().decompress(encoded.duplicate());
+        counter.bytes += out.remaining();
+        return out.remaining();
+    }
+
+    static FrequencyModel newModel() {
+        return new FrequencyModel(256, ArithCoder.INCREMENT, RangeCoder.MAX_TOTAL);
+    }
+}
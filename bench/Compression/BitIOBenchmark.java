@@ -0,0 +1,54 @@
+package Compression;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * bit packing as the LZW codes use it: one value of 9 to 16 bits per
+ * input byte, written to and read back from an array
+ * @author Hang Yuan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BitIOBenchmark {
+
+    @Param({"testFile2", "random", "LaserTower.bmp"})
+    public String corpus;
+
+    byte[] data;
+    byte[] packed;
+
+    @Setup
+    public void setup() throws IOException {
+        data = Corpus.load(corpus);
+        packed = new byte[2 * data.length + 16];
+        writeBits(new ByteCounter());
+    }
+
+    @Benchmark
+    public int writeBits(ByteCounter counter) throws IOException {
+        BitWriter bw = new BitWriter(packed, 0);
+        for (int i = 0; i < data.length; i++) {
+            bw.writeBits(data[i] & 0xFF, 9 + (i & 7));
+        }
+        bw.flush();
+        counter.bytes += data.length;
+        return bw.position();
+    }
+
+    @Benchmark
+    public int readBits(ByteCounter counter) throws IOException {
+        BitReader br = new BitReader(packed, 0, packed.length);
+        int sum = 0;
+        for (int i = 0; i < data.length; i++) {
+            sum += br.readBits(9 + (i & 7));
+        }
+        counter.bytes += data.length;
+        return sum;
+    }
+}
@@ -0,0 +1,65 @@
+package Compression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import Compression.Compressors.Codec;
+
+/**
+ * small payloads through ByteCodec, which keeps per-thread codec state,
+ * against a new codec instance per call; run with -prof gc to compare
+ * allocation. Bytes counted are original bytes
+ * @author Hang Yuan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ByteCodecBenchmark {
+
+    @Param({"Huffman", "Arith", "LZW", "LZSS", "LZHuffman"})
+    public String codec;
+
+    @Param({"256", "4096", "65536"})
+    public int size;
+
+    @Param({"testFile2"})
+    public String corpus;
+
+    ByteCodec bytes;
+    byte[] data;
+    byte[] encoded;
+    byte[] dst;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] all = Corpus.load(corpus);
+        data = Arrays.copyOf(all, Math.min(size, all.length));
+        bytes = ByteCodec.forCodec(Codec.valueOf(codec));
+        encoded = bytes.compress(data);
+        dst = new byte[Math.max(bytes.maxCompressedLength(data.length), data.length)];
+    }
+
+    @Benchmark
+    public int compress(ByteCounter counter) throws IOException {
+        counter.bytes += data.length;
+        return bytes.compress(data, 0, data.length, dst, 0);
+    }
+
+    @Benchmark
+    public int decompress(ByteCounter counter) throws IOException {
+        counter.bytes += data.length;
+        return bytes.decompress(encoded, 0, encoded.length, dst, 0);
+    }
+
+    @Benchmark
+    public int compressNewInstance(ByteCounter counter) throws IOException {
+        ByteBuffer out = Compressors.newCompressor(Codec.valueOf(codec)).compress(ByteBuffer.wrap(data));
+        counter.bytes += data.length;
+        return out.remaining();
+    }
+}
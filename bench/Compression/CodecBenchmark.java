@@ -0,0 +1,53 @@
+package Compression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import Compression.Compressors.Codec;
+
+/**
+ * whole codecs through the ByteBuffer API, bytes counted are original bytes
+ * @author Hang Yuan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"Huffman", "Arith", "LZW", "LZSS", "LZHuffman"})
+    public String codec;
+
+    @Param({"testFile2", "testFile3", "random", "zeros", "LaserTower.bmp"})
+    public String corpus;
+
+    byte[] data;
+    ByteBuffer encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        data = Corpus.load(corpus);
+        encoded = newCompressor().compress(ByteBuffer.wrap(data));
+    }
+
+    @Benchmark
+    public int compress(ByteCounter counter) throws IOException {
+        ByteBuffer out = newCompressor().compress(ByteBuffer.wrap(data));
+        counter.bytes += data.length;
+        return out.remaining();
+    }
+
+    @Benchmark
+    public int decompress(ByteCounter counter) throws IOException {
+        ByteBuffer out = newCompressor().decompress(encoded.duplicate());
+        counter.bytes += out.remaining();
+        return out.remaining();
+    }
+
+    AbstractCompressor newCompressor() {
+        return Compressors.newCompressor(Codec.valueOf(codec));
+    }
+}
@@ -0,0 +1,31 @@
+package Compression;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * benchmark inputs: files shipped with the project and generated data
+ * @author Hang Yuan
+ */
+class Corpus {
+
+    static final int GENERATED_SIZE = 1 << 20;
+
+    /**
+     * load a corpus: "random", "zeros", or a file under the bench.dir
+     * system property (project root by default)
+     */
+    static byte[] load(String name) throws IOException {
+        if (name.equals("random")) {
+            byte[] data = new byte[GENERATED_SIZE];
+            new Random(1).nextBytes(data);
+            return data;
+        }
+        if (name.equals("zeros")) {
+            return new byte[GENERATED_SIZE];
+        }
+        return Files.readAllBytes(Paths.get(System.getProperty("bench.dir", "."), name));
+    }
+}
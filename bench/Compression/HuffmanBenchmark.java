@@ -0,0 +1,76 @@
+package Compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Huffman kernels: code construction, block encoding and block decoding
+ * @author Hang Yuan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HuffmanBenchmark {
+
+    @Param({"testFile2", "testFile3", "random", "zeros", "LaserTower.bmp"})
+    public String corpus;
+
+    byte[] data;
+    int[] counts = new int[256];
+    byte[] lengths = new byte[256];
+    int[] codes = new int[256];
+    HuffmanCodes builder = new HuffmanCodes(256, HuffmanTree.MAX_CODE_LEN);
+    HuffmanTree.BlockEncoder encoder;
+    HuffmanTree.BlockDecoder decoder;
+    byte[] dst;
+    byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        data = Corpus.load(corpus);
+        HuffmanTree tree = new HuffmanTree();
+        encoder = tree.new BlockEncoder();
+        decoder = tree.new BlockDecoder();
+        dst = new byte[2 * data.length + 1024];
+        BitWriter bw = new BitWriter(dst, 0);
+        encoder.encode(data, 0, data.length, bw);
+        bw.flush();
+        encoded = Arrays.copyOf(dst, bw.position());
+    }
+
+    /**
+     * byte histogram plus length-limited canonical code construction
+     */
+    @Benchmark
+    public int buildCodes(ByteCounter counter) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < data.length; i++) {
+            counts[data[i] & 0xFF]++;
+        }
+        builder.buildLengths(counts, 256, lengths);
+        builder.assignCodes(lengths, 256, codes);
+        counter.bytes += data.length;
+        return codes[0];
+    }
+
+    @Benchmark
+    public int encode(ByteCounter counter) throws IOException {
+        BitWriter bw = new BitWriter(dst, 0);
+        encoder.encode(data, 0, data.length, bw);
+        bw.flush();
+        counter.bytes += data.length;
+        return bw.position();
+    }
+
+    @Benchmark
+    public int decode(ByteCounter counter) throws IOException {
+        int n = decoder.decode(new BitReader(encoded, 0, encoded.length));
+        counter.bytes += n;
+        return n;
+    }
+}
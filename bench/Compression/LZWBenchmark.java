@@ -0,0 +1,75 @@
+package Compression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * LZW kernels: encoder dictionary lookups and the whole codec
+ * @author Hang Yuan
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LZWBenchmark {
+
+    @Param({"testFile2", "testFile3", "random", "zeros", "LaserTower.bmp"})
+    public String corpus;
+
+    byte[] data;
+    DictLZW lzw = new DictLZW();
+    ByteBuffer encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        data = Corpus.load(corpus);
+        encoded = lzw.compress(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * the encoder's word parsing alone: one find-or-add per input byte,
+     * starting over when the dictionary is full
+     */
+    @Benchmark
+    public int dictionary(ByteCounter counter) {
+        DictLZW.CodeTable dict = lzw.new CodeTable();
+        int maxCode = 1 << DictLZW.DEFAULT_MAX_BITS;
+        int nextCode = DictLZW.FIRST_CODE;
+        int words = 0;
+        int prefix = data.length > 0 ? data[0] & 0xFF : 0;
+        for (int i = 1; i < data.length; i++) {
+            int b = data[i] & 0xFF;
+            int code = dict.findOrAdd(prefix, b, nextCode);
+            if (code >= 0) {
+                prefix = code;
+                continue;
+            }
+            words++;
+            prefix = b;
+            if (++nextCode == maxCode) {
+                dict.clear();
+                nextCode = DictLZW.FIRST_CODE;
+            }
+        }
+        counter.bytes += data.length;
+        return words;
+    }
+
+    @Benchmark
+    public int encode(ByteCounter counter) throws IOException {
+        ByteBuffer out = new DictLZW().compress(ByteBuffer.wrap(data));
+        counter.bytes += data.length;
+        return out.remaining();
+    }
+
+    @Benchmark
+    public int decode(ByteCounter counter) throws IOException {
+        ByteBuffer out = new DictLZW().decompress(encoded.duplicate());
+        counter.bytes += out.remaining();
+        return out.remaining();
+    }
+}
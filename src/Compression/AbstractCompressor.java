@@ -1,6 +1,22 @@
 package Compression;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import Compression.CompressService;
 
 /**
@@ -14,18 +30,99 @@ public abstract class AbstractCompressor implements CompressService {
         Decompress
     }
 
+    /**
+     * file mode output buffer
+     */
+    static final int OUT_BUF_SIZE = 1 << 16;
+
+    /**
+     * largest input of the default compress(InputStream, OutputStream),
+     * which holds the whole input in one array
+     */
+    static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * largest output buffer decompress(ByteBuffer) starts with
+     */
+    static final int INITIAL_OUTPUT_LIMIT = 1 << 26;
+
+    /**
+     * postfix of file mode output still being written
+     */
+    static final String PARTIAL_POSTFIX = "partial";
+
     String fileName = null;
     String zipFileName = null;
     long fileSize = 0;
     long compressedSize = 0;
     Mode crtMode = Mode.Compress;
     double compressRate = 1;
-    
+
+    List<CodecListener> listeners = new CopyOnWriteArrayList<CodecListener>();
+    boolean verbose = false;
+    boolean overlappedIO = Runtime.getRuntime().availableProcessors() > 1;
+
+    // bit buffer kept from one operation to the next, see newBitWriter
+    byte[] bitBuffer = null;
+
+    // operation in progress
+    CodecMetrics metrics = null;
+    CodecEvent event = null;
+    long startNanos;
+    long startAllocated;
+
+    /**
+     * input stream counting the bytes a codec reads
+     */
+    class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        public CountingInputStream(InputStream ins) {
+            super(ins);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * constructor for a stream-only compressor, not bound to any file
+     */
+    public AbstractCompressor() {
+    }
+
     public AbstractCompressor(String pathName, String postFix) {
         int postFixLen = postFix.length();
 
         if (pathName.length() >= (postFixLen + 2) &&
-            pathName.substring(pathName.length() - (postFixLen + 1), pathName.length()).equals(postFix)) 
+            pathName.substring(pathName.length() - (postFixLen + 1), pathName.length()).equals("." + postFix)) 
         {
             setDecompressMode();
             zipFileName = pathName;
@@ -41,6 +138,394 @@ public abstract class AbstractCompressor implements CompressService {
         fileSize = file.length();
     }
 
+    /**
+     * encode len bytes of src starting at off into outs
+     * @return encoded size
+     */
+    protected abstract long encode(byte[] src, int off, int len, OutputStream outs)
+                throws IOException;
+
+    /**
+     * decode an encoded stream from ins into outs
+     * @return decoded size
+     */
+    protected abstract long decode(InputStream ins, OutputStream outs)
+                throws IOException;
+
+    /**
+     * largest encoded size of len bytes; input coding would expand is
+     * stored, so this is len plus the framing
+     */
+    protected abstract long maxEncodedLength(long len);
+
+    /**
+     * compress a whole stream, by default read into memory and encoded at once;
+     * codecs that can stream override this
+     * @return compressed size
+     */
+    protected long compressStream(InputStream ins, OutputStream outs) throws IOException {
+        byte[] src = readFully(ins);
+        BufferedOutputStream bouts = new BufferedOutputStream(outs);
+        long size = encode(src, 0, src.length, bouts);
+        bouts.flush();
+        return size;
+    }
+
+    /**
+     * decompress a whole stream
+     * @return decompressed size
+     */
+    protected long decompressStream(InputStream ins, OutputStream outs) throws IOException {
+        BufferedOutputStream bouts = new BufferedOutputStream(outs);
+        long size = decode(ins, bouts);
+        bouts.flush();
+        return size;
+    }
+
+    /**
+     * compress file to zipFileName
+     * @return compressed file size
+     */
+    @Override
+    public long compress() {
+        if (mode() != AbstractCompressor.Mode.Compress) {
+            System.err.println("Error: Not in Compress mode");
+            return 0;
+        }
+
+        // begin compressing
+        if (verbose) {
+            System.out.println("Start Compressing ...");
+        }
+        try {
+            compressFile();
+        }
+        catch (IOException e) {
+           e.printStackTrace();
+        }
+
+        // go to decompress mode
+        setDecompressMode();
+        setCompressRate(((double)compressedSize) / fileSize);
+        if (verbose) {
+            System.out.println("Done: Compression Rate = " + 
+                               String.format("%.2f", getCompressRate()*100) + "%\n");
+        }
+        return compressedSize;
+    }
+
+    /**
+     * decompress zipFileName to fileName.out
+     * @return decompressed file size
+     */
+    @Override
+    public long decompress() {
+        if (mode() != AbstractCompressor.Mode.Decompress) {
+            System.err.println("Error: Not in Decompress mode");
+            return 0;
+        }
+
+        if (verbose) {
+            System.out.println("Start Decompressing ...");
+        }
+        try {
+            decompressFile();
+        }
+        catch (IOException e) {
+           e.printStackTrace();
+        }
+
+        if (verbose) {
+            System.out.println("Done: Decompressed File Size = " + fileSize + " bytes");
+        }
+        return fileSize;
+    }
+
+    /**
+     * compress fileName to zipFileName, failures are thrown and leave no
+     * zipFileName behind, see partialFile
+     * @return compressed file size
+     */
+    long compressFile() throws IOException {
+        InputStream ins = openInput(fileName);
+        try {
+            File partial = partialFile(zipFileName);
+            try {
+                OutputStream outs = openOutput(partial.getPath());
+                try {
+                    compressedSize = compress(ins, outs);
+                }
+                finally {
+                    outs.close();
+                }
+                moveIntoPlace(partial, zipFileName);
+            }
+            finally {
+                partial.delete();
+            }
+        }
+        finally {
+            ins.close();
+        }
+        return compressedSize;
+    }
+
+    /**
+     * decompress zipFileName to fileName.out, failures are thrown and
+     * leave no fileName.out behind, see partialFile
+     * @return decompressed file size
+     */
+    long decompressFile() throws IOException {
+        InputStream ins = openInput(zipFileName);
+        try {
+            File partial = partialFile(fileName + ".out");
+            try {
+                OutputStream outs = openOutput(partial.getPath());
+                try {
+                    fileSize = decompress(ins, outs);
+                }
+                finally {
+                    outs.close();
+                }
+                moveIntoPlace(partial, fileName + ".out");
+            }
+            finally {
+                partial.delete();
+            }
+        }
+        finally {
+            ins.close();
+        }
+        compressedSize = new File(zipFileName).length();
+        setCompressRate(((double)compressedSize) / fileSize);
+        return fileSize;
+    }
+
+    /**
+     * file the output of a file mode operation is written to before it is
+     * complete: name.partial next to it, so a failed or killed run never
+     * leaves a truncated name that looks up to date
+     */
+    static File partialFile(String name) {
+        return new File(name + "." + PARTIAL_POSTFIX);
+    }
+
+    /**
+     * rename a complete partial file to name, replacing any older name
+     */
+    static void moveIntoPlace(File partial, String name) throws IOException {
+        try {
+            Files.move(partial.toPath(), Paths.get(name), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(partial.toPath(), Paths.get(name), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * file mode input: read ahead on its own thread when overlapping I/O,
+     * memory-mapped otherwise
+     */
+    InputStream openInput(String name) throws IOException {
+        if (overlappedIO) {
+            return new ReadAheadInputStream(new FileInputStream(name));
+        }
+        return new MappedInputStream(name);
+    }
+
+    /**
+     * file mode output: written behind on its own thread when overlapping
+     * I/O, buffered otherwise
+     */
+    OutputStream openOutput(String name) throws IOException {
+        if (overlappedIO) {
+            return new WriteBehindOutputStream(new FileOutputStream(name));
+        }
+        return new BufferedOutputStream(new FileOutputStream(name), OUT_BUF_SIZE);
+    }
+
+    @Override
+    public long compress(InputStream ins, OutputStream outs) throws IOException {
+        begin(Mode.Compress);
+        CountingInputStream cins = new CountingInputStream(ins);
+        long size = compressStream(cins, outs);
+        end(cins.count, size);
+        return size;
+    }
+
+    @Override
+    public long decompress(InputStream ins, OutputStream outs) throws IOException {
+        begin(Mode.Decompress);
+        // mapped and read ahead input need no buffer in between
+        if (!(ins instanceof MappedInputStream || ins instanceof ReadAheadInputStream)) {
+            ins = new BufferedInputStream(ins);
+        }
+        CountingInputStream cins = new CountingInputStream(ins);
+        long size = decompressStream(cins, outs);
+        end(cins.count, size);
+        return size;
+    }
+
+    @Override
+    public ByteBuffer compress(ByteBuffer src) throws IOException {
+        begin(Mode.Compress);
+        long srcSize = src.remaining();
+        ByteArrayOutputStream outs = new ByteArrayOutputStream(src.remaining() / 2 + 16);
+        if (src.hasArray()) {
+            encode(src.array(), src.arrayOffset() + src.position(), src.remaining(), outs);
+            src.position(src.limit());
+        }
+        else {
+            byte[] barray = new byte[src.remaining()];
+            src.get(barray);
+            encode(barray, 0, barray.length, outs);
+        }
+        end(srcSize, outs.size());
+        return ByteBuffer.wrap(outs.toByteArray());
+    }
+
+    @Override
+    public ByteBuffer decompress(ByteBuffer src) throws IOException {
+        begin(Mode.Decompress);
+        long srcSize = src.remaining();
+        // a guess, grown as needed; large inputs do not reserve twice their size up front
+        int capacity = (int)Math.min(2L * src.remaining() + 16, INITIAL_OUTPUT_LIMIT);
+        ByteArrayOutputStream outs = new ByteArrayOutputStream(capacity);
+        decode(new ByteBufferInputStream(src), outs);
+        end(srcSize - src.remaining(), outs.size());
+        return ByteBuffer.wrap(outs.toByteArray());
+    }
+
+    @Override
+    public void addListener(CodecListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(CodecListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * print progress and the metrics of every operation to System.out
+     */
+    @Override
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    @Override
+    public void setOverlappedIO(boolean overlappedIO) {
+        this.overlappedIO = overlappedIO;
+    }
+
+    /**
+     * metrics of the last finished operation, null before the first
+     */
+    public CodecMetrics lastMetrics() {
+        return metrics;
+    }
+
+    /**
+     * name reported in metrics
+     */
+    protected String codecName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * bit writer over outs on this instance's buffer, one at a time
+     */
+    BitWriter newBitWriter(OutputStream outs) {
+        return new BitWriter(outs, bitBuffer());
+    }
+
+    /**
+     * bit reader over ins on this instance's buffer, one at a time
+     */
+    BitReader newBitReader(InputStream ins) {
+        return new BitReader(ins, bitBuffer());
+    }
+
+    private byte[] bitBuffer() {
+        if (bitBuffer == null) {
+            bitBuffer = new byte[BitWriter.BUF_SIZE];
+        }
+        return bitBuffer;
+    }
+
+    /**
+     * start timing a phase
+     * @return start time
+     */
+    long phaseStart() {
+        return System.nanoTime();
+    }
+
+    /**
+     * add the time since start to a phase of the current operation, if
+     * any: encode and decode are also called outside of one, see ByteCodec
+     * @return now, the start of a following phase
+     */
+    long phaseDone(CodecMetrics.Phase phase, long start) {
+        long now = System.nanoTime();
+        if (event != null) {
+            metrics.add(phase, now - start);
+        }
+        return now;
+    }
+
+    /*
+     * start measuring an operation
+     */
+    void begin(Mode mode) {
+        metrics = new CodecMetrics(codecName(), mode);
+        event = new CodecEvent();
+        event.begin();
+        startAllocated = CodecMetrics.threadAllocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /*
+     * finish measuring the operation and report it
+     */
+    void end(long bytesIn, long bytesOut) {
+        metrics.totalNanos = System.nanoTime() - startNanos;
+        metrics.bytesIn = bytesIn;
+        metrics.bytesOut = bytesOut;
+        if (startAllocated >= 0) {
+            metrics.allocatedBytes = CodecMetrics.threadAllocatedBytes() - startAllocated;
+        }
+        event.end();
+        event.report(metrics);
+        event = null;
+        for (CodecListener listener: listeners) {
+            listener.operationDone(metrics);
+        }
+        if (verbose) {
+            System.out.println(metrics);
+        }
+    }
+
+    /**
+     * read all remaining bytes of an input stream, at most MAX_ARRAY_SIZE
+     */
+    static byte[] readFully(InputStream ins) throws IOException {
+        ByteArrayOutputStream bouts = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        long total = 0;
+        int n;
+        while ((n = ins.read(buf, 0, buf.length)) > 0) {
+            total += n;
+            if (total > MAX_ARRAY_SIZE) {
+                throw new IOException("Input over " + MAX_ARRAY_SIZE + 
+                                      " bytes does not fit in memory, use a streaming codec");
+            }
+            bouts.write(buf, 0, n);
+        }
+        return bouts.toByteArray();
+    }
+
     /**
      * get compress rate
      * @return compress rate
@@ -77,4 +562,4 @@ public abstract class AbstractCompressor implements CompressService {
     public void setDecompressMode() {
         crtMode = Mode.Decompress;
     }
-}
\ No newline at end of file
+}
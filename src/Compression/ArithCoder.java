@@ -1,17 +1,9 @@
 package Compression;
 
-import java.io.Serializable;
-import java.lang.Thread;
 import java.util.Arrays;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.io.IOException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.nio.ByteBuffer;
+import java.io.InputStream;
+import java.io.OutputStream;
 import Compression.AbstractCompressor;
 
 /**
@@ -20,383 +12,203 @@ import Compression.AbstractCompressor;
  */
 public class ArithCoder extends AbstractCompressor {
 
-    class Interval {
-        double lowBound;
-        double highBound;
-        public Interval(double lowBound, double highBound) {
-            this.lowBound = lowBound;
-            this.highBound = highBound;
-        }
-    }
-
     /**
-     * constructor
-     * @param fileName file to be compressed
+     * count added per occurrence, counts are halved at RangeCoder.MAX_TOTAL
      */
-    public ArithCoder(String pathName) {
-        super(pathName, "art");
-    }
+    static final int INCREMENT = 32;
 
     /**
-     * compress file
-     * | original size | data  |
-     * |   8 bytes     | ..... |
-     * @return decoded bit size
+     * input coded per block, each block is range coded on its own but the
+     * adaptive model carries over
      */
-    @Override
-    public long compress() {
-        if (mode() != AbstractCompressor.Mode.Compress) {
-            System.err.println("Error: Not in Compress mode");
-            return 0;
-        }
+    static final int BLOCK_SIZE = 1 << 16;
 
-        // begin compressing
-        System.out.println("Start Compressing ...");
-        File file = new File(fileName);
-        try {
-            BufferedOutputStream outs = 
-                new BufferedOutputStream(new FileOutputStream(zipFileName));
+    // kept from one operation to the next
+    byte[] scratch = null;
+    byte[] block = null;
 
-            // write original file size
-            ByteBuffer bBuf = ByteBuffer.allocate(8);
-            bBuf.putLong(fileSize);
-            outs.write(bBuf.array(), 0, 8);
-            
-            // start encoding
-            BufferedInputStream ins = 
-                new BufferedInputStream(new FileInputStream(fileName));
-
-            // byte count and prob distribution
-            int[] cnts = new int[256];
-            Arrays.fill(cnts, 1);
-            int total = 256;
-
-            double[] distri = new double[257];
-            for (int i = 1; i < 257; i++) {
-                distri[i] = distri[i-1] + 1.0 / 256;
+    /**
+     * per-stream encoding state: each block is range coded into a scratch
+     * array first and stored instead when that is not smaller
+     * | block header | range coded data, or the block itself |
+     * |   4 bytes    |              .....                    |
+     * see BlockType for the header
+     */
+    class Encoder {
+        BitWriter bw;
+        FrequencyModel model = newModel();
+
+        public Encoder(BitWriter bw) {
+            this.bw = bw;
+            if (scratch == null) {
+                // a symbol costs at most 16 bits as no count drops below 1
+                scratch = new byte[2 * BLOCK_SIZE + 16];
             }
+        }
 
-            byte crt = 0; // byte buf
-            int byteIndex = 0; // bit index in byte buf
-            Interval interval = new Interval(0, 1);
-            ArrayList<Integer> bitsToWrite = new ArrayList<Integer>();
-            for (int i = 0; i < fileSize; i++) {
-                //System.out.println(i);
-                byte b = (byte)ins.read();
-                int index = (int)(b&0x0FF);
-                interval.lowBound = distri[index];
-                interval.highBound = distri[index+1];
-                // System.out.println("index = " + index);
-                // System.out.println("[" + interval.lowBound + " " + interval.highBound + "]");
-                       
-                // try to write encoded bits if possible
-                int bitsWritten = 0;
-                try {
-                    bitsWritten = checkBitsToWrite(interval, bitsToWrite);
-                }
-                catch (PrecisionException e) {
-                    e.printStackTrace();
-                    System.exit(1);
-                }
-                // System.out.printf("Got %d bits: [", bitsWritten);
-                // for (Integer a: bitsToWrite) {
-                //     System.out.printf("%d ", a);
-                // }
-                // System.out.println("\b]");
-                // System.out.println("***[" + interval.lowBound + " " + interval.highBound + "]***");
-                for (Integer a: bitsToWrite) {
-                    crt = (byte)(crt|(a<<byteIndex));
-                    byteIndex++;
-                    if (byteIndex == 8) {
-                        // write this byte to .art file and reset byte buf
-                        outs.write(crt);
-                        //System.out.println("dumping byte: " + Integer.toHexString(crt&0xFF).toUpperCase());
-                        crt = 0;
-                        byteIndex = 0;
-                        compressedSize++;
-                    }
-                }
-                bitsToWrite.clear();
-
-                // update distribution and count arrays
-                cnts[index]++;
-                total++;
-                distri[0] = interval.lowBound;
-                for (int j = 1; j < 257; j++) {
-                    distri[j] = distri[j-1] 
-                                + (1.0 * cnts[j-1] / total) * (interval.highBound - interval.lowBound);
-                }
-                distri[256] = interval.highBound;
-                // System.out.println(distri[0] + " ~ " + distri[256]);
-                // System.out.println();
+        /**
+         * code one block of at most BLOCK_SIZE bytes
+         */
+        public void encode(byte[] src, int off, int len) throws IOException {
+            long start = phaseStart();
+            if (BlockType.isConstant(src, off, len)) {
+                // the model skips constant blocks on both sides
+                bw.writeInt(BlockType.header(BlockType.CONSTANT, len));
+                bw.writeByte(src[off]);
+                phaseDone(CodecMetrics.Phase.Encode, start);
+                return;
             }
-            // write trailing bits
-            if (interval.lowBound != interval.highBound) {
-                double middle = (interval.lowBound + interval.highBound) / 2;
-                while (middle > 0) {
-                    middle *= 2;
-                    int a = (int)middle;
-                    middle -= a;
-                    crt = (byte)(crt|(a<<byteIndex));
-                    byteIndex++;
-                    if (byteIndex == 8) {
-                        // write this byte to .art file and reset byte buf
-                        outs.write(crt);
-                        //System.out.println("dumping byte: " + crt);
-                        crt = 0;
-                        byteIndex = 0;
-                        compressedSize++;
-                    }
-                }
+            BitWriter sw = new BitWriter(scratch, 0);
+            RangeCoder.Encoder rc = new RangeCoder.Encoder(sw);
+            for (int i = off; i < off + len; i++) {
+                int symbol = src[i] & 0xFF;
+                rc.encode(model.cumFreq(symbol), model.freq(symbol), model.total());
+                model.update(symbol);
             }
-            // write the last imcomplete byte
-            if (byteIndex < 8) {
-                outs.write(crt);
-                //System.out.println("dumping last byte: " + crt);
-                compressedSize++;
+            int size = (int)rc.finish();
+            sw.flush();
+            if (size >= len) {
+                // the decoder updates the model with the stored bytes too
+                bw.writeInt(BlockType.header(BlockType.STORED, len));
+                bw.writeBytes(src, off, len);
             }
-
-            ins.close();
-            outs.close();
-        }
-        catch (IOException e) {
-           e.printStackTrace();
+            else {
+                bw.writeInt(BlockType.header(BlockType.CODED, len));
+                bw.writeBytes(scratch, 0, size);
+            }
+            phaseDone(CodecMetrics.Phase.Encode, start);
         }
 
-        // go to decompress mode
-        setDecompressMode();
-        setCompressRate(((double)compressedSize) / fileSize);
-        System.out.println("Done: Compression Rate = " + 
-                           String.format("%.2f", getCompressRate()*100) + "%\n");
-        return compressedSize;
+        /**
+         * write the end marker, an empty block header
+         */
+        public void finish() throws IOException {
+            long start = phaseStart();
+            bw.writeInt(0);
+            bw.flush();
+            phaseDone(CodecMetrics.Phase.Flush, start);
+        }
     }
 
     /**
-     * decompress file
-     * @return decompressed file size
+     * constructor
+     * @param fileName file to be compressed
      */
-    @Override
-    public long decompress() {
-        // check file ending with ".huf"
-        if (mode() != AbstractCompressor.Mode.Decompress) {
-            System.err.println("Error: Not in Decompress mode");
-            return 0;
-        }
-
-        try {
-            System.out.println("Start Decompressing ...");
-            BufferedInputStream ins = 
-                new BufferedInputStream(new FileInputStream(zipFileName));
-
-            // read original file size
-            byte[] barray = new byte[8];
-            ins.read(barray, 0, 8);
-            fileSize = ByteBuffer.wrap(barray).getLong();
-            File file = new File(zipFileName);
-            compressedSize = file.length();
-            setCompressRate(((double)compressedSize) / fileSize);
-            
-            // output: decompressed file
-            BufferedOutputStream outs = 
-                new BufferedOutputStream(new FileOutputStream(fileName + ".out"));
-
-            // initialize byte count and prob distribution
-            int[] cnts = new int[256];
-            Arrays.fill(cnts, 1);
-            int total = 256;
-
-            double[] distri = new double[257];
-            for (int i = 1; i < 257; i++) {
-                distri[i] = distri[i-1] + 1.0 / 256;
-            }
-
-            // start decoding
-            int byteIndex = 0;
-            double exp = 1;
-            double acc = 0;
-            byte crtByte = (byte)ins.read();
-            int crtSize = 0, readSize = 1;
-            Interval interval = new Interval(0, 1);
-            ArrayList<Integer> bitsToWrite = new ArrayList<Integer>();
-            while (crtSize < fileSize && readSize <= compressedSize) {
-                int lowBoundIndex = searchRange(distri, acc);
-                //System.out.println(lowBoundIndex);
-                
-                interval.lowBound = distri[lowBoundIndex];
-                interval.highBound = distri[lowBoundIndex + 1];
-                //System.out.println("exp = " + exp + " acc = " + acc + " in [" + interval.lowBound + ", " + interval.highBound+ "]");
-
-                if (interval.lowBound == interval.highBound) {
-                    //System.out.println("lowBoundIndex = " + lowBoundIndex + " " + cnts[lowBoundIndex-1] + " " + total);
-                }
-                //double tmpLow = interval.lowBound, tmpHigh = interval.highBound, tmpacc = acc;
-                if ((acc + 1.0 / exp) <= interval.highBound) {
-                    // write a decoded byte
-                    outs.write((byte)lowBoundIndex);
-                    crtSize++;
-                    //System.out.println(crtSize);
-                    //System.out.println("produce byte: " + lowBoundIndex);
-                    int bitsWritten = 0;
-                    try {
-                        bitsWritten = checkBitsToWrite(interval, bitsToWrite);
-                    }
-                    catch (PrecisionException e) {
-                        e.printStackTrace();
-                        System.exit(1);
-                    }
-                    //System.out.println("acc = " + acc + ", exp = " + exp);
-                    acc = powFraction(acc, bitsWritten);            
-                    exp /= Math.pow(2, bitsWritten);
-                    //System.out.println("** acc = " + acc + ", [" + interval.lowBound + ", " + interval.highBound+ "]");
-                    bitsToWrite.clear();
-                    //System.out.println("normalized acc = " + acc);
-
-                    // update cnts and distribution arrays
-                    cnts[lowBoundIndex]++;
-                    total++;
-                    distri[0] = interval.lowBound;
-                    for (int j = 1; j < 257; j++) {
-                        distri[j] = distri[j-1] 
-                                  + (1.0 * cnts[j-1] / total) * (interval.highBound - interval.lowBound);
-                    }
-                    distri[256] = interval.highBound;
-                }
-                else {
-                    int bit = (crtByte>>byteIndex) & 0x1;
-                    exp *= 2;
-                    acc += (1.0*bit / exp);
-                    //System.out.printf("%d ", bit);
-                    
-                    byteIndex++;
-                    if (byteIndex == 8) {
-                        crtByte = (byte)ins.read();
-                        //System.out.println("read byte: " + crtByte + ", readSize = " + readSize);
-                        readSize++;
-                        byteIndex = 0;
-                    }
-                }
-                //System.out.println();
-            } //end while
-            
-
-            ins.close();
-            outs.close();
-        }
-        catch (IOException e) {
-           e.printStackTrace();
-        }
+    public ArithCoder(String pathName) {
+        super(pathName, "art");
+    }
 
-        System.out.println("Done: Decompressed File Size = " + fileSize + " bytes");
-        return fileSize;
+    /**
+     * constructor for stream compressing
+     */
+    public ArithCoder() {
+        super();
     }
 
-    /*
-     * given a float number f and int num, return fraction(f * 2^num), 
+    /**
+     * compress a stream in one pass, no need to know its size in advance
+     * | block | block | ... | 0 (4 bytes) |
+     * @return compressed size
      */
-    private double powFraction(double f, int num) {
-        for (int i = 0; i < num; i++) {
-            f *= 2;
-            f -= (int)f;
+    @Override
+    protected long compressStream(InputStream ins, OutputStream outs) throws IOException {
+        BitWriter bw = newBitWriter(outs);
+        Encoder encoder = new Encoder(bw);
+        byte[] buf = block();
+        int n;
+        while ((n = HuffmanTree.readBlock(ins, buf)) > 0) {
+            encoder.encode(buf, 0, n);
         }
-        return f;
+        encoder.finish();
+        return bw.bytesWritten();
     }
 
-    
-    private int checkBitsToWrite(Interval interval, ArrayList<Integer> bitsToWrite) 
-                throws PrecisionException
+    /**
+     * encode bytes
+     * | block | block | ... | 0 (4 bytes) |
+     * @return encoded size
+     */
+    @Override
+    protected long encode(byte[] src, int off, int len, OutputStream outs)
+                throws IOException
     {
-        int num1 = 0;
-        if (interval.highBound == 1) {
-            while (interval.lowBound > 0) {
-                interval.lowBound *= 2;
-                int a = (int)interval.lowBound;
-                if (a == 0) {
-                    interval.lowBound /= 2;
-                    break;
-                }
-                interval.lowBound -= a;
-                bitsToWrite.add((int)a);
-                num1++;
-            }
-            interval.highBound = 1;
-            return num1;
+        BitWriter bw = newBitWriter(outs);
+        Encoder encoder = new Encoder(bw);
+        for (int pos = off; pos < off + len; pos += BLOCK_SIZE) {
+            encoder.encode(src, pos, Math.min(BLOCK_SIZE, off + len - pos));
         }
+        encoder.finish();
+        return bw.bytesWritten();
+    }
 
-        if (interval.lowBound == interval.highBound) {
-            //System.err.println("err");
-            throw new PrecisionException("\nlowBound = highBound = " + interval.lowBound);
-        }
+    /**
+     * decode an arithmetic encoded stream
+     * @return decoded size
+     */
+    @Override
+    protected long decode(InputStream ins, OutputStream outs) throws IOException {
+        long start = phaseStart();
+        BitReader br = newBitReader(ins);
+        FrequencyModel model = newModel();
+        byte[] out = block();
+        long size = 0;
         while (true) {
-            //System.out.println("[" + lowBound + " " + highBound + "]");
-            interval.lowBound *= 2;
-            interval.highBound *= 2;
-            if ( (interval.lowBound >= 1 && interval.highBound  >= 1) 
-              || (interval.lowBound < 1 && interval.highBound < 1))
-            {
-                bitsToWrite.add((int)interval.lowBound);
-                interval.lowBound = interval.lowBound - (int)interval.lowBound; // remove non-faction part
-                interval.highBound = interval.highBound - (int)interval.highBound;
-                num1++;
+            int header = br.readInt();
+            int type = BlockType.type(header);
+            int len = BlockType.size(header);
+            if (len == 0 || len > BLOCK_SIZE || type > BlockType.CONSTANT) {
+                if (header != 0) {
+                    throw new IOException("Corrupted arithmetic block header: " + header);
+                }
+                break;
             }
-            else {
-                if (interval.highBound > 1) {
-                    interval.lowBound /= 2;
-                    interval.highBound /= 2;
+            if (type == BlockType.CONSTANT) {
+                Arrays.fill(out, 0, len, (byte)br.readByte());
+            }
+            else if (type == BlockType.STORED) {
+                br.readBytes(out, 0, len);
+                for (int i = 0; i < len; i++) {
+                    model.update(out[i] & 0xFF);
                 }
-                else {
-                    // higher bound has no trailing bits
-                    bitsToWrite.add(0);
-                    num1++;
-                    while (interval.lowBound > 0) {
-                        interval.lowBound *= 2;
-                        int a = (int)interval.lowBound;
-                        if (a == 0) {
-                            interval.lowBound /= 2;
-                            break;
-                        }
-                        interval.lowBound -= a;
-                        bitsToWrite.add((int)a);
-                        num1++;
-                    }
-                    interval.highBound = 1;
+            }
+            else {
+                RangeCoder.Decoder rc = new RangeCoder.Decoder(br);
+                for (int i = 0; i < len; i++) {
+                    int symbol = model.findSymbol(rc.getFreq(model.total()));
+                    rc.decode(model.cumFreq(symbol), model.freq(symbol));
+                    out[i] = (byte)symbol;
+                    model.update(symbol);
                 }
-                break;
             }
+            if (br.overrun()) {
+                throw new IOException("Corrupted arithmetic stream: truncated block");
+            }
+            outs.write(out, 0, len);
+            size += len;
         }
-        return num1;
+        phaseDone(CodecMetrics.Phase.Decode, start);
+        return size;
     }
 
-
     /**
-     * Serach a value in distribution array
-     * @return low range index
+     * largest encoded size: every block stored behind its header
      */
-    private int searchRange(double[] distri, double acc) {
-        int start = -1, end = distri.length;
-        //System.out.println(distri[0] + " ~ " + distri[256] + ", search " + acc);
-        // binary search
-        while (start < end - 1) {
-            int middle = (end + start) / 2;
-            if (acc >= distri[middle]) {
-                start = middle;
-            }
-            else {
-                end = middle;
-            }
-        }
-        return start;
-    }    
+    @Override
+    protected long maxEncodedLength(long len) {
+        return len + 4 * ((len + BLOCK_SIZE - 1) / BLOCK_SIZE) + 4;
+    }
 
+    private byte[] block() {
+        if (block == null) {
+            block = new byte[BLOCK_SIZE];
+        }
+        return block;
+    }
 
     /**
-     *  range precision exception: lowBound = highBound
+     * create the adaptive model over 256 bytes
      */
-    class PrecisionException extends Exception  
-    {
-        public PrecisionException(String msg)  
-        {  
-            super(msg);  
-        }  
+    private FrequencyModel newModel() {
+        return new FrequencyModel(256, INCREMENT, RangeCoder.MAX_TOTAL);
     }
-
 }
@@ -0,0 +1,254 @@
+package Compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import Compression.Compressors.Codec;
+
+/**
+ * batch compressing in one JVM: files, directories (walked recursively)
+ * and file lists are compressed or decompressed on a fixed pool of worker
+ * threads, files whose output is newer than the input are skipped, and an
+ * aggregate throughput report is printed at the end
+ *
+ * compressing writes file.postfix of the codec, decompressing reads any
+ * known postfix and writes file.out, as the file mode of the compressors:
+ * output is written to a .partial file renamed on success, so a failed
+ * file is redone by the next run;
+ * verifying checks the checksums of .blk block containers without
+ * decoding them
+ *
+ * usage: BatchCompress [-d | -verify] [-codec Huffman|...|Auto] [-threads n]
+ *                      [-force] [-v] (file | directory | @listfile) ...
+ * @author Hang Yuan
+ */
+public class BatchCompress {
+
+    List<File> inputs = new ArrayList<File>();
+    Codec codec = Codec.Auto;
+    boolean decompress = false;
+    boolean verify = false;
+    int threads = Runtime.getRuntime().availableProcessors();
+    boolean force = false;
+    boolean verbose = false;
+
+    AtomicInteger done = new AtomicInteger();
+    AtomicInteger skipped = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    AtomicLong bytesIn = new AtomicLong();
+    AtomicLong bytesOut = new AtomicLong();
+    AtomicLong busyNanos = new AtomicLong();
+
+    /**
+     * compress or decompress one file
+     */
+    class Job implements Runnable {
+        File file;
+
+        public Job(File file) {
+            this.file = file;
+        }
+
+        public void run() {
+            try {
+                if (verify) {
+                    verify(file);
+                    return;
+                }
+                AbstractCompressor compressor = newCompressor(file);
+                File output = new File(decompress ? compressor.fileName + ".out"
+                                                  : compressor.zipFileName);
+                if (!force && output.exists() && output.lastModified() >= file.lastModified()) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+                if (compressor instanceof BlockCompressor && threads > 1) {
+                    // files run in parallel already, keep a file's blocks on its thread
+                    ((BlockCompressor)compressor).setExecutor(null, 1);
+                }
+
+                long start = System.nanoTime();
+                long in = file.length();
+                long out = decompress ? compressor.decompressFile() : compressor.compressFile();
+                long nanos = System.nanoTime() - start;
+
+                busyNanos.addAndGet(nanos);
+                bytesIn.addAndGet(in);
+                bytesOut.addAndGet(out);
+                done.incrementAndGet();
+                if (verbose) {
+                    System.out.println(String.format("%s -> %s: %d -> %d bytes, %.1f MB/s",
+                                       file, output, in, out,
+                                       (decompress ? out : in) * 1000.0 / Math.max(nanos, 1)));
+                }
+            }
+            catch (IOException e) {
+                failed.incrementAndGet();
+                System.err.println("Error: " + file + ": " + e.getMessage());
+            }
+        }
+
+        void verify(File file) throws IOException {
+            BlockCompressor container = new BlockCompressor(file.getPath(), Codec.Auto);
+            long start = System.nanoTime();
+            long in = file.length();
+            long out = container.verifyFile();
+            long nanos = System.nanoTime() - start;
+
+            busyNanos.addAndGet(nanos);
+            bytesIn.addAndGet(in);
+            bytesOut.addAndGet(out);
+            done.incrementAndGet();
+            if (verbose) {
+                System.out.println(String.format("%s: OK, %d bytes, %.1f MB/s",
+                                   file, in, in * 1000.0 / Math.max(nanos, 1)));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BatchCompress batch = new BatchCompress();
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-d")) {
+                batch.decompress = true;
+            }
+            else if (args[i].equals("-verify")) {
+                batch.decompress = true;
+                batch.verify = true;
+            }
+            else if (args[i].equals("-codec")) {
+                batch.codec = Codec.valueOf(args[++i]);
+            }
+            else if (args[i].equals("-threads")) {
+                batch.threads = Math.max(1, Integer.parseInt(args[++i]));
+            }
+            else if (args[i].equals("-force")) {
+                batch.force = true;
+            }
+            else if (args[i].equals("-v")) {
+                batch.verbose = true;
+            }
+            else if (args[i].startsWith("@")) {
+                for (String line: Files.readAllLines(Paths.get(args[i].substring(1)),
+                                                     StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) {
+                        paths.add(line.trim());
+                    }
+                }
+            }
+            else {
+                paths.add(args[i]);
+            }
+        }
+        // which files are inputs depends on -d, wherever it is
+        for (String path: paths) {
+            batch.add(new File(path));
+        }
+
+        batch.run();
+        System.exit(batch.failed.get() == 0 ? 0 : 1);
+    }
+
+    /**
+     * add a file, or every file under a directory, that this run handles
+     */
+    public void add(File file) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child: children) {
+                    add(child);
+                }
+            }
+        }
+        else if (wanted(file)) {
+            inputs.add(file);
+        }
+    }
+
+    /**
+     * run every job on the pool and print the report
+     */
+    public void run() throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (File file: inputs) {
+            futures.add(pool.submit(new Job(file)));
+        }
+        for (Future<?> future: futures) {
+            try {
+                future.get();
+            }
+            catch (ExecutionException e) {
+                failed.incrementAndGet();
+                e.getCause().printStackTrace();
+            }
+        }
+        pool.shutdown();
+        report(System.nanoTime() - start);
+    }
+
+    /**
+     * print the aggregate counts, ratio and throughput
+     */
+    void report(long wallNanos) {
+        long in = bytesIn.get();
+        long out = bytesOut.get();
+        long raw = decompress ? out : in;
+        long packed = decompress ? in : out;
+        System.out.println(String.format("%s %d files with %d threads: %d done, %d up to date, %d failed",
+                           verify ? "Verified" : decompress ? "Decompressed" : "Compressed " + codec,
+                           inputs.size(), threads, done.get(), skipped.get(), failed.get()));
+        System.out.println(String.format("%d -> %d bytes, ratio %.2f%%", in, out,
+                           raw == 0 ? 0 : packed * 100.0 / raw));
+        // verifying runs at the speed of the compressed side
+        long scanned = verify ? packed : raw;
+        System.out.println(String.format("wall %.3f s, %.1f MB/s; per thread %.1f MB/s",
+                           wallNanos / 1e9, scanned * 1000.0 / Math.max(wallNanos, 1),
+                           scanned * 1000.0 / Math.max(busyNanos.get(), 1)));
+    }
+
+    /**
+     * whether a file is an input of this run: block containers when
+     * verifying, compressed files when decompressing, anything else when
+     * compressing
+     */
+    boolean wanted(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String postFix = dot < 0 ? "" : name.substring(dot + 1);
+        boolean compressed = Codec.forPostFix(postFix) != null;
+        if (verify) {
+            return postFix.equals(Codec.Auto.postFix());
+        }
+        if (decompress) {
+            return compressed;
+        }
+        return !compressed && !postFix.equals("out")
+               && !postFix.equals(AbstractCompressor.PARTIAL_POSTFIX);
+    }
+
+    AbstractCompressor newCompressor(File file) {
+        if (!decompress) {
+            return Compressors.newCompressor(file.getPath(), codec);
+        }
+        String name = file.getName();
+        Codec fileCodec = Codec.forPostFix(name.substring(name.lastIndexOf('.') + 1));
+        return Compressors.newCompressor(file.getPath(), fileCodec);
+    }
+}
@@ -0,0 +1,233 @@
+package Compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * bit reader: keeps up to 64 bits in an accumulator, refilled a byte at a
+ * time from a chunk buffer that is bulk-loaded from an InputStream, or
+ * directly from a caller's array or ByteBuffer. Bits come out LSB first,
+ * matching BitWriter. Reads past the end of input return zero bits.
+ *
+ * Hot loops call refill() once, then peek/consume against bitBuf;
+ * after refill() at least 57 bits are available.
+ * @author Hang Yuan
+ */
+class BitReader {
+
+    static final int BUF_SIZE = 1 << 16;
+
+    static final VarHandle LONG_LE = 
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    InputStream ins;
+    ByteBuffer src;
+    byte[] buf;
+    int pos;
+    int limit;
+    long consumedChunks = 0; // bytes of earlier chunks
+    int start;
+    int overrun = 0;         // zero bytes supplied past end of input
+
+    long bitBuf = 0;
+    int bitCount = 0;
+
+    /**
+     * constructor
+     * @param ins stream to read from, the reader buffers ahead of what it returns
+     */
+    public BitReader(InputStream ins) {
+        this(ins, new byte[BUF_SIZE]);
+    }
+
+    /**
+     * constructor reusing a buffer of the caller's
+     * @param ins stream to read from, the reader buffers ahead of what it returns
+     * @param buf buffer for the bytes read ahead, at least 8 bytes
+     */
+    public BitReader(InputStream ins, byte[] buf) {
+        this.ins = ins;
+        this.buf = buf;
+    }
+
+    /**
+     * constructor reading from an array
+     */
+    public BitReader(byte[] src, int off, int len) {
+        this.buf = src;
+        this.pos = off;
+        this.start = off;
+        this.limit = off + len;
+    }
+
+    /**
+     * constructor reading the remaining bytes of a ByteBuffer, without copying
+     * when it is array-backed
+     */
+    public BitReader(ByteBuffer src) {
+        if (src.hasArray()) {
+            this.buf = src.array();
+            this.pos = src.arrayOffset() + src.position();
+            this.start = this.pos;
+            this.limit = this.pos + src.remaining();
+        }
+        else {
+            this.src = src;
+            this.buf = new byte[BUF_SIZE];
+        }
+    }
+
+    /**
+     * top up the accumulator to at least 57 bits
+     */
+    public void refill() throws IOException {
+        if (limit - pos >= 8) {
+            // branch-free fast path: load 8 bytes, keep the whole ones that fit
+            bitBuf |= (long)LONG_LE.get(buf, pos) << bitCount;
+            pos += (63 - bitCount) >>> 3;
+            bitCount |= 56;
+            return;
+        }
+        while (bitCount <= 56) {
+            if (pos == limit && !fill()) {
+                overrun++;
+                bitCount += 8;
+                continue;
+            }
+            bitBuf |= (long)(buf[pos++] & 0xFF) << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    /**
+     * look at the next n bits without consuming them, 1 <= n <= 32
+     */
+    public int peekBits(int n) throws IOException {
+        if (bitCount < n) {
+            refill();
+        }
+        return (int)(bitBuf & (0xFFFFFFFFL >>> (32 - n)));
+    }
+
+    /**
+     * drop n bits that were already made available
+     */
+    public void consume(int n) {
+        bitBuf >>>= n;
+        bitCount -= n;
+    }
+
+    /**
+     * read the next n bits, 1 <= n <= 32
+     */
+    public int readBits(int n) throws IOException {
+        if (bitCount < n) {
+            refill();
+        }
+        int value = (int)(bitBuf & (0xFFFFFFFFL >>> (32 - n)));
+        bitBuf >>>= n;
+        bitCount -= n;
+        return value;
+    }
+
+    /**
+     * read a byte
+     */
+    public int readByte() throws IOException {
+        return readBits(8);
+    }
+
+    /**
+     * read 4 big-endian bytes as an int
+     */
+    public int readInt() throws IOException {
+        return Integer.reverseBytes(readBits(32));
+    }
+
+    /**
+     * read 8 big-endian bytes as a long
+     */
+    public long readLong() throws IOException {
+        long high = readInt() & 0xFFFFFFFFL;
+        return (high << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * skip to the next byte boundary and read len bytes as they are, zero
+     * past the end of input
+     */
+    public void readBytes(byte[] b, int off, int len) throws IOException {
+        alignToByte();
+        while (len > 0 && bitCount > 0) {
+            b[off++] = (byte)bitBuf;
+            bitBuf >>>= 8;
+            bitCount -= 8;
+            len--;
+        }
+        if (bitCount == 0) {
+            // drop bits loaded ahead of pos, the bytes are copied past them
+            bitBuf = 0;
+        }
+        while (len > 0) {
+            if (pos == limit && !fill()) {
+                Arrays.fill(b, off, off + len, (byte)0);
+                overrun += len;
+                return;
+            }
+            int n = Math.min(len, limit - pos);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * skip to the next byte boundary
+     */
+    public void alignToByte() {
+        consume(bitCount & 7);
+    }
+
+    /**
+     * whether bits beyond the end of input have been consumed
+     */
+    public boolean overrun() {
+        return bytesConsumed() > consumedChunks + (limit - start);
+    }
+
+    /**
+     * whole bytes consumed so far, including zero padding past the end
+     */
+    public long bytesConsumed() {
+        return consumedChunks + (pos - start) + overrun - (bitCount >>> 3);
+    }
+
+    /*
+     * load the next chunk from the stream or buffer
+     * @return false at end of input
+     */
+    private boolean fill() throws IOException {
+        if (ins == null && src == null) {
+            return false;
+        }
+        consumedChunks += limit - start;
+        start = 0;
+        pos = 0;
+        limit = 0;
+        if (ins != null) {
+            int n = ins.read(buf, 0, buf.length);
+            limit = Math.max(n, 0);
+        }
+        else {
+            limit = Math.min(buf.length, src.remaining());
+            src.get(buf, 0, limit);
+        }
+        return limit > 0;
+    }
+}
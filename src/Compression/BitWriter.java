@@ -0,0 +1,240 @@
+package Compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * bit writer: packs values of 1 to 32 bits LSB first into a 64-bit
+ * accumulator and stores it 8 bytes at a time into a byte buffer, which
+ * is either flushed to an OutputStream or is the caller's own array
+ * @author Hang Yuan
+ */
+class BitWriter {
+
+    static final int BUF_SIZE = 1 << 16;
+
+    static final VarHandle LONG_LE = 
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    static final VarHandle INT_LE = 
+        MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    OutputStream outs;
+    byte[] buf;
+    int pos;
+    int start;
+    long flushed = 0;
+
+    long bitBuf = 0;
+    int bitCount = 0;
+
+    /**
+     * constructor
+     * @param outs stream receiving the packed bytes
+     */
+    public BitWriter(OutputStream outs) {
+        this(outs, new byte[BUF_SIZE]);
+    }
+
+    /**
+     * constructor reusing a buffer of the caller's
+     * @param outs stream receiving the packed bytes
+     * @param buf buffer for the bytes not flushed yet, at least 8 bytes
+     */
+    public BitWriter(OutputStream outs, byte[] buf) {
+        this.outs = outs;
+        this.buf = buf;
+    }
+
+    /**
+     * constructor writing straight into an array, which must be large enough
+     * @param dst destination array
+     * @param off first byte to write
+     */
+    public BitWriter(byte[] dst, int off) {
+        this.buf = dst;
+        this.pos = off;
+        this.start = off;
+    }
+
+    /**
+     * append the low n bits of value, 1 <= n <= 32, higher bits of value
+     * must be zero
+     */
+    public void writeBits(int value, int n) throws IOException {
+        long v = value & 0xFFFFFFFFL;
+        int free = 64 - bitCount;
+        if (n < free) {
+            bitBuf |= v << bitCount;
+            bitCount += n;
+            return;
+        }
+        // accumulator is full: store all 64 bits, keep what did not fit
+        bitBuf |= v << bitCount;
+        if (pos > buf.length - 8) {
+            drain();
+        }
+        if (pos > buf.length - 8) {
+            // tail of the caller's array
+            for (int i = 0; i < 8; i++) {
+                putByte((byte)(bitBuf >>> (i * 8)));
+            }
+        }
+        else {
+            LONG_LE.set(buf, pos, bitBuf);
+            pos += 8;
+        }
+        bitBuf = v >>> free;
+        bitCount = n - free;
+    }
+
+    /**
+     * append the code of each byte of src[off, off + len) looked up in a
+     * code table, keeping the accumulator in locals for the whole run
+     * @param codes code of each byte value
+     * @param lengths code length of each byte value
+     */
+    public void writeSymbols(byte[] src, int off, int len, int[] codes, byte[] lengths)
+                throws IOException
+    {
+        if (bitCount >= 32) {
+            // leave room for a whole code above the pending bits
+            for (int i = 0; i < 4; i++) {
+                putByte((byte)bitBuf);
+                bitBuf >>>= 8;
+            }
+            bitCount -= 32;
+        }
+        long acc = bitBuf;
+        int count = bitCount;
+        for (int i = off; i < off + len; i++) {
+            int b = src[i] & 0xFF;
+            acc |= (codes[b] & 0xFFFFFFFFL) << count;
+            count += lengths[b];
+            if (count >= 32) {
+                if (pos > buf.length - 4) {
+                    bitBuf = acc;
+                    bitCount = count;
+                    drain();
+                    if (pos > buf.length - 4) {
+                        throw new IOException("BitWriter: destination array is full");
+                    }
+                }
+                INT_LE.set(buf, pos, (int)acc);
+                pos += 4;
+                acc >>>= 32;
+                count -= 32;
+            }
+        }
+        bitBuf = acc;
+        bitCount = count;
+    }
+
+    /**
+     * append the low 8 bits of b
+     */
+    public void writeByte(int b) throws IOException {
+        writeBits(b & 0xFF, 8);
+    }
+
+    /**
+     * append an int as 4 big-endian bytes
+     */
+    public void writeInt(int num) throws IOException {
+        writeBits(Integer.reverseBytes(num), 32);
+    }
+
+    /**
+     * append a long as 8 big-endian bytes
+     */
+    public void writeLong(long num) throws IOException {
+        writeInt((int)(num >>> 32));
+        writeInt((int)num);
+    }
+
+    /**
+     * align to a byte boundary and append src[off, off + len) as it is
+     */
+    public void writeBytes(byte[] src, int off, int len) throws IOException {
+        alignToByte();
+        while (bitCount > 0) {
+            putByte((byte)bitBuf);
+            bitBuf >>>= 8;
+            bitCount -= 8;
+        }
+        while (len > 0) {
+            if (pos == buf.length) {
+                if (outs == null) {
+                    throw new IOException("BitWriter: destination array is full");
+                }
+                drain();
+            }
+            int n = Math.min(len, buf.length - pos);
+            System.arraycopy(src, off, buf, pos, n);
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * pad with zero bits up to the next byte boundary
+     */
+    public void alignToByte() throws IOException {
+        int pad = (8 - (bitCount & 7)) & 7;
+        if (pad > 0) {
+            writeBits(0, pad);
+        }
+    }
+
+    /**
+     * align to a byte boundary and push every pending byte to the sink,
+     * the underlying stream itself is not flushed
+     */
+    public void flush() throws IOException {
+        alignToByte();
+        while (bitCount > 0) {
+            putByte((byte)bitBuf);
+            bitBuf >>>= 8;
+            bitCount -= 8;
+        }
+        if (outs != null) {
+            drain();
+        }
+    }
+
+    /**
+     * bytes produced so far, counting only whole bytes
+     */
+    public long bytesWritten() {
+        return flushed + (pos - start) + (bitCount >>> 3);
+    }
+
+    /**
+     * position after the last byte written into the caller's array
+     */
+    public int position() {
+        return pos;
+    }
+
+    private void putByte(byte b) throws IOException {
+        if (pos == buf.length) {
+            if (outs == null) {
+                throw new IOException("BitWriter: destination array is full");
+            }
+            drain();
+        }
+        buf[pos++] = b;
+    }
+
+    private void drain() throws IOException {
+        if (outs == null) {
+            return;
+        }
+        outs.write(buf, 0, pos);
+        flushed += pos;
+        pos = 0;
+    }
+}
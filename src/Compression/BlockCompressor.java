@@ -0,0 +1,612 @@
+package Compression;
+
+import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.io.IOException;
+import java.io.EOFException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+import Compression.AbstractCompressor;
+import Compression.Compressors.Codec;
+
+/**
+ * Block container compressor: splits the input into independent blocks,
+ * compresses them in parallel with any codec and writes them in order
+ * | magic | version | codec id | block size | frame | ... | 0 (4 bytes) | index | footer |
+ * | 4 bytes | 1 byte |  1 byte  |  4 bytes   |
+ * frame:
+ * | original size | compressed size | original CRC32C | compressed CRC32C | compressed block |
+ * |    4 bytes    |     4 bytes     |     4 bytes     |      4 bytes      |      .....       |
+ * with codec Auto the compressed block starts with the id of its codec:
+ * | codec id | compressed block |
+ * |  1 byte  |      .....       |
+ * both checksums are checked when decompressing, verify() checks the
+ * compressed one without decoding; version 1 frames have no checksums
+ * index, one entry per frame, lets SeekableDecompressor find blocks:
+ * | original offset | frame offset in container |
+ * |    8 bytes      |         8 bytes           |
+ * footer:
+ * | original size | index offset | frame count | magic |
+ * |   8 bytes     |   8 bytes    |   4 bytes   | 4 bytes |
+ * @author Hang Yuan
+ */
+public class BlockCompressor extends AbstractCompressor {
+
+    public static final int MAGIC = 0x434D5042; // "CMPB"
+    public static final int VERSION = 2;
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    public static final int MIN_BLOCK_SIZE = 1 << 12;
+    public static final int MAX_BLOCK_SIZE = 1 << 26;
+
+    static final int HEADER_SIZE = 10;
+    static final int FRAME_HEADER_SIZE = 16;
+    static final int V1_FRAME_HEADER_SIZE = 8;
+    static final int INDEX_ENTRY_SIZE = 16;
+    static final int FOOTER_SIZE = 24;
+
+    Codec codec;
+    int blockSize = DEFAULT_BLOCK_SIZE;
+    ExecutorService executor = ForkJoinPool.commonPool();
+    int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * a block compressed or decompressed by a worker
+     */
+    class Frame {
+        int rawSize;
+        ByteBuffer data;
+        int rawCrc;
+        int dataCrc;
+
+        public Frame(int rawSize, ByteBuffer data) {
+            this.rawSize = rawSize;
+            this.data = data;
+        }
+    }
+
+    /**
+     * seek table built while frames are written
+     */
+    class Index {
+        long[] rawOffsets = new long[16];
+        long[] frameOffsets = new long[16];
+        int count = 0;
+        long rawSize = 0;
+
+        public void add(long frameOffset, int rawLen) {
+            if (count == rawOffsets.length) {
+                rawOffsets = Arrays.copyOf(rawOffsets, count * 2);
+                frameOffsets = Arrays.copyOf(frameOffsets, count * 2);
+            }
+            rawOffsets[count] = rawSize;
+            frameOffsets[count] = frameOffset;
+            count++;
+            rawSize += rawLen;
+        }
+
+        /**
+         * write index entries and footer
+         * @return bytes written
+         */
+        public long write(OutputStream outs, long indexOffset) throws IOException {
+            ByteBuffer bBuf = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            for (int i = 0; i < count; i++) {
+                bBuf.clear();
+                bBuf.putLong(rawOffsets[i]);
+                bBuf.putLong(frameOffsets[i]);
+                outs.write(bBuf.array(), 0, INDEX_ENTRY_SIZE);
+            }
+            bBuf = ByteBuffer.allocate(FOOTER_SIZE);
+            bBuf.putLong(rawSize);
+            bBuf.putLong(indexOffset);
+            bBuf.putInt(count);
+            bBuf.putInt(MAGIC);
+            outs.write(bBuf.array(), 0, FOOTER_SIZE);
+            return (long)count * INDEX_ENTRY_SIZE + FOOTER_SIZE;
+        }
+    }
+
+    /**
+     * constructor
+     * @param pathName file to be compressed, or a .blk file to decompress
+     * @param codec codec for compressing, ignored when decompressing
+     */
+    public BlockCompressor(String pathName, Codec codec) {
+        super(pathName, "blk");
+        this.codec = codec;
+    }
+
+    /**
+     * constructor for stream compressing
+     * @param codec codec for compressing, ignored when decompressing
+     */
+    public BlockCompressor(Codec codec) {
+        super();
+        this.codec = codec;
+    }
+
+    /**
+     * set the size of the independent input blocks
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("block size out of range: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * set the executor running block tasks; at most 2 * parallelism blocks
+     * are in flight, parallelism 1 codes every block on the calling thread
+     */
+    public void setExecutor(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * compress a stream block by block, blocks are coded in parallel
+     * @return compressed size
+     */
+    @Override
+    protected long compressStream(InputStream ins, OutputStream outs) throws IOException {
+        long start = phaseStart();
+        writeHeader(outs);
+        long size = HEADER_SIZE;
+        start = phaseDone(CodecMetrics.Phase.WriteHeader, start);
+        Index index = new Index();
+
+        ArrayDeque<Future<Frame>> pending = new ArrayDeque<Future<Frame>>();
+        while (true) {
+            final byte[] block = new byte[blockSize];
+            final int n = HuffmanTree.readBlock(ins, block);
+            if (n == 0) {
+                break;
+            }
+            pending.add(submit(new Callable<Frame>() {
+                public Frame call() throws IOException {
+                    return compressBlock(block, 0, n);
+                }
+            }));
+            if (pending.size() >= window()) {
+                size += writeFrame(outs, await(pending.poll()), index, size);
+            }
+        }
+        while (!pending.isEmpty()) {
+            size += writeFrame(outs, await(pending.poll()), index, size);
+        }
+        start = phaseDone(CodecMetrics.Phase.Encode, start);
+        size += writeEnd(outs, index, size);
+        phaseDone(CodecMetrics.Phase.Flush, start);
+        return size;
+    }
+
+    /**
+     * decompress a block container, blocks are decoded in parallel
+     * @return decompressed size
+     */
+    @Override
+    protected long decompressStream(InputStream ins, OutputStream outs) throws IOException {
+        long start = phaseStart();
+        byte[] header = new byte[HEADER_SIZE];
+        readExactly(ins, header, 0, HEADER_SIZE);
+        final Codec blockCodec = parseHeader(ByteBuffer.wrap(header));
+        final int version = header[4];
+        long size = 0;
+        start = phaseDone(CodecMetrics.Phase.ReadHeader, start);
+
+        ArrayDeque<Future<Frame>> pending = new ArrayDeque<Future<Frame>>();
+        byte[] frameHeader = new byte[FRAME_HEADER_SIZE];
+        int frames = 0;
+        while (true) {
+            ByteBuffer fBuf = readFrameHeader(ins, frameHeader, version);
+            if (fBuf == null) {
+                break;
+            }
+            final int frame = frames++;
+            final int rawSize = fBuf.getInt(0);
+            final int rawCrc = fBuf.getInt(8);
+            final int dataCrc = fBuf.getInt(12);
+            final byte[] payload = new byte[fBuf.getInt(4)];
+            readExactly(ins, payload, 0, payload.length);
+            pending.add(submit(new Callable<Frame>() {
+                public Frame call() throws IOException {
+                    if (version > 1) {
+                        checkCrc(dataCrc, ByteBuffer.wrap(payload), "compressed block " + frame);
+                    }
+                    Frame block = decompressBlock(blockCodec, payload, rawSize);
+                    if (version > 1) {
+                        checkCrc(rawCrc, block.data, "block " + frame);
+                    }
+                    return block;
+                }
+            }));
+            if (pending.size() >= window()) {
+                size += writeData(outs, await(pending.poll()));
+            }
+        }
+        while (!pending.isEmpty()) {
+            size += writeData(outs, await(pending.poll()));
+        }
+        outs.flush();
+        phaseDone(CodecMetrics.Phase.Decode, start);
+
+        // skip the index, leaving ins right after the container
+        byte[] entry = new byte[INDEX_ENTRY_SIZE];
+        for (int i = 0; i < frames; i++) {
+            readExactly(ins, entry, 0, INDEX_ENTRY_SIZE);
+        }
+        readFooter(ins, size, frames);
+        return size;
+    }
+
+    /**
+     * check a container without decoding it: the compressed checksum of
+     * every frame, the seek table and the footer; costs reading the
+     * container only. ins is left right after the container
+     * @return original size
+     */
+    public long verify(InputStream ins) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        readExactly(ins, header, 0, HEADER_SIZE);
+        parseHeader(ByteBuffer.wrap(header));
+        int version = header[4];
+        if (version < 2) {
+            throw new IOException("Container version " + version + " has no checksums");
+        }
+
+        Index index = new Index();
+        long offset = HEADER_SIZE;
+        byte[] frameHeader = new byte[FRAME_HEADER_SIZE];
+        byte[] payload = new byte[0];
+        ByteBuffer fBuf;
+        while ((fBuf = readFrameHeader(ins, frameHeader, version)) != null) {
+            int compSize = fBuf.getInt(4);
+            if (compSize > payload.length) {
+                payload = new byte[Math.max(compSize, payload.length * 2)];
+            }
+            readExactly(ins, payload, 0, compSize);
+            checkCrc(fBuf.getInt(12), ByteBuffer.wrap(payload, 0, compSize),
+                     "compressed block " + index.count);
+            index.add(offset, fBuf.getInt(0));
+            offset += FRAME_HEADER_SIZE + compSize;
+        }
+
+        byte[] entry = new byte[INDEX_ENTRY_SIZE];
+        for (int i = 0; i < index.count; i++) {
+            readExactly(ins, entry, 0, INDEX_ENTRY_SIZE);
+            ByteBuffer bBuf = ByteBuffer.wrap(entry);
+            if (bBuf.getLong() != index.rawOffsets[i] || bBuf.getLong() != index.frameOffsets[i]) {
+                throw new IOException("Seek table does not match frame " + i);
+            }
+        }
+        readFooter(ins, index.rawSize, index.count);
+        return index.rawSize;
+    }
+
+    /**
+     * verify zipFileName, failures are thrown
+     * @return original size
+     */
+    long verifyFile() throws IOException {
+        InputStream ins = openInput(zipFileName);
+        try {
+            return verify(ins);
+        }
+        finally {
+            ins.close();
+        }
+    }
+
+    /**
+     * encode bytes, blocks are coded in parallel straight from src
+     * @return encoded size
+     */
+    @Override
+    protected long encode(final byte[] src, int off, int len, OutputStream outs)
+                throws IOException
+    {
+        long start = phaseStart();
+        writeHeader(outs);
+        long size = HEADER_SIZE;
+        start = phaseDone(CodecMetrics.Phase.WriteHeader, start);
+        Index index = new Index();
+
+        ArrayDeque<Future<Frame>> pending = new ArrayDeque<Future<Frame>>();
+        for (int pos = off; pos < off + len; pos += blockSize) {
+            final int from = pos;
+            final int n = Math.min(blockSize, off + len - pos);
+            pending.add(submit(new Callable<Frame>() {
+                public Frame call() throws IOException {
+                    return compressBlock(src, from, n);
+                }
+            }));
+            if (pending.size() >= window()) {
+                size += writeFrame(outs, await(pending.poll()), index, size);
+            }
+        }
+        while (!pending.isEmpty()) {
+            size += writeFrame(outs, await(pending.poll()), index, size);
+        }
+        start = phaseDone(CodecMetrics.Phase.Encode, start);
+        size += writeEnd(outs, index, size);
+        phaseDone(CodecMetrics.Phase.Flush, start);
+        return size;
+    }
+
+    @Override
+    protected long decode(InputStream ins, OutputStream outs) throws IOException {
+        return decompressStream(ins, outs);
+    }
+
+    @Override
+    protected String codecName() {
+        return "Block:" + codec;
+    }
+
+    /**
+     * compress one block with the worker thread's codec instance, with
+     * codec Auto the codec is chosen from a sample of the block
+     */
+    Frame compressBlock(byte[] block, int off, int len) throws IOException {
+        // encode directly, the container operation is the one measured
+        Codec blockCodec = codec;
+        ByteArrayOutputStream outs = new ByteArrayOutputStream(len / 2 + 16);
+        if (codec == Codec.Auto) {
+            blockCodec = CodecSelector.forThread().select(block, off, len);
+            outs.write(blockCodec.id());
+        }
+        ByteCodec.forCodec(blockCodec).compressor().encode(block, off, len, outs);
+        Frame frame = new Frame(len, ByteBuffer.wrap(outs.toByteArray()));
+        frame.rawCrc = crc32c(ByteBuffer.wrap(block, off, len));
+        frame.dataCrc = crc32c(frame.data);
+        return frame;
+    }
+
+    /**
+     * decompress one block with the worker thread's codec instance
+     */
+    Frame decompressBlock(Codec blockCodec, byte[] payload, int rawSize) throws IOException {
+        return new Frame(rawSize, decodeBlock(blockCodec, ByteBuffer.wrap(payload), rawSize));
+    }
+
+    /**
+     * decode one block payload and check its size
+     */
+    static ByteBuffer decodeBlock(Codec blockCodec, ByteBuffer payload, int rawSize)
+                throws IOException
+    {
+        if (blockCodec == Codec.Auto) {
+            int id = payload.hasRemaining() ? payload.get() : -1;
+            blockCodec = Codec.forId(id);
+            if (blockCodec == null || blockCodec == Codec.Auto) {
+                throw new IOException("Unknown block codec id: " + id);
+            }
+        }
+        AbstractCompressor compressor = ByteCodec.forCodec(blockCodec).compressor();
+        ByteArrayOutputStream outs = new ByteArrayOutputStream(rawSize);
+        compressor.decode(new ByteBufferInputStream(payload), outs);
+        if (outs.size() != rawSize) {
+            throw new IOException("Block size mismatch: expected " + rawSize 
+                                  + ", got " + outs.size());
+        }
+        return ByteBuffer.wrap(outs.toByteArray());
+    }
+
+    /**
+     * CRC32C of the remaining bytes, data is left unchanged
+     */
+    static int crc32c(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return (int)crc.getValue();
+    }
+
+    /**
+     * check the CRC32C of a frame's compressed or original data
+     * @param what the data checked, for the error message
+     */
+    static void checkCrc(int expected, ByteBuffer data, String what) throws IOException {
+        int actual = crc32c(data);
+        if (actual != expected) {
+            throw new IOException(String.format("Checksum mismatch in %s: expected %08x, got %08x",
+                                                what, expected, actual));
+        }
+    }
+
+    /**
+     * largest encoded size: every block coded as large as its codec may
+     * make it, plus frame headers, seek table and footer
+     */
+    @Override
+    protected long maxEncodedLength(long len) {
+        long blocks = (len + blockSize - 1) / blockSize;
+        long block = Math.min(len, blockSize);
+        long coded = 0;
+        if (codec != Codec.Auto) {
+            coded = ByteCodec.forCodec(codec).compressor().maxEncodedLength(block);
+        }
+        else {
+            for (Codec blockCodec: CodecSelector.CODECS) {
+                coded = Math.max(coded, ByteCodec.forCodec(blockCodec).compressor().maxEncodedLength(block));
+            }
+            // codec id
+            coded++;
+        }
+        return HEADER_SIZE + blocks * (FRAME_HEADER_SIZE + coded + INDEX_ENTRY_SIZE)
+               + 4 + FOOTER_SIZE;
+    }
+
+    private void writeHeader(OutputStream outs) throws IOException {
+        ByteBuffer bBuf = ByteBuffer.allocate(HEADER_SIZE);
+        bBuf.putInt(MAGIC);
+        bBuf.put((byte)VERSION);
+        bBuf.put((byte)codec.id());
+        bBuf.putInt(blockSize);
+        outs.write(bBuf.array(), 0, HEADER_SIZE);
+    }
+
+    /**
+     * read and check a frame header, version 1 headers have no checksums
+     * @return the header, null at the end of frames
+     */
+    private ByteBuffer readFrameHeader(InputStream ins, byte[] frameHeader, int version)
+                throws IOException
+    {
+        readExactly(ins, frameHeader, 0, 4);
+        ByteBuffer bBuf = ByteBuffer.wrap(frameHeader);
+        int rawSize = bBuf.getInt(0);
+        if (rawSize == 0) {
+            return null;
+        }
+        readExactly(ins, frameHeader, 4, frameHeaderSize(version) - 4);
+        checkFrame(rawSize, bBuf.getInt(4));
+        return bBuf;
+    }
+
+    /**
+     * check the sizes of a frame before its payload is allocated: no codec
+     * comes near doubling a block, a larger compressed size is corruption
+     */
+    static void checkFrame(int rawSize, int compSize) throws IOException {
+        if (rawSize < 0 || rawSize > MAX_BLOCK_SIZE || compSize < 0
+            || compSize > 2L * rawSize + 1024)
+        {
+            throw new IOException("Corrupted block frame: " + rawSize + "/" + compSize);
+        }
+    }
+
+    /**
+     * read and check the footer after the seek table
+     */
+    private void readFooter(InputStream ins, long size, int frames) throws IOException {
+        byte[] footer = new byte[FOOTER_SIZE];
+        readExactly(ins, footer, 0, FOOTER_SIZE);
+        ByteBuffer bBuf = ByteBuffer.wrap(footer);
+        if (bBuf.getLong(0) != size || bBuf.getInt(FOOTER_SIZE - 8) != frames
+            || bBuf.getInt(FOOTER_SIZE - 4) != MAGIC)
+        {
+            throw new IOException("Corrupted block container footer");
+        }
+    }
+
+    static int frameHeaderSize(int version) {
+        return version > 1 ? FRAME_HEADER_SIZE : V1_FRAME_HEADER_SIZE;
+    }
+
+    /**
+     * check a container header
+     * @return codec of the blocks
+     */
+    static Codec parseHeader(ByteBuffer bBuf) throws IOException {
+        if (bBuf.getInt() != MAGIC) {
+            throw new IOException("Not a block container");
+        }
+        int version = bBuf.get();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported container version: " + version);
+        }
+        int id = bBuf.get();
+        Codec blockCodec = Codec.forId(id);
+        if (blockCodec == null) {
+            throw new IOException("Unknown codec id: " + id);
+        }
+        return blockCodec;
+    }
+
+    /**
+     * write the end of frames, the seek table and the footer, and flush
+     * @return bytes written
+     */
+    private long writeEnd(OutputStream outs, Index index, long offset) throws IOException {
+        ByteBuffer bBuf = ByteBuffer.allocate(4);
+        bBuf.putInt(0);
+        outs.write(bBuf.array(), 0, 4);
+        long size = 4 + index.write(outs, offset + 4);
+        outs.flush();
+        return size;
+    }
+
+    private long writeFrame(OutputStream outs, Frame frame, Index index, long offset)
+                throws IOException
+    {
+        index.add(offset, frame.rawSize);
+        ByteBuffer bBuf = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        bBuf.putInt(frame.rawSize);
+        bBuf.putInt(frame.data.remaining());
+        bBuf.putInt(frame.rawCrc);
+        bBuf.putInt(frame.dataCrc);
+        outs.write(bBuf.array(), 0, FRAME_HEADER_SIZE);
+        return FRAME_HEADER_SIZE + writeData(outs, frame);
+    }
+
+    private long writeData(OutputStream outs, Frame frame) throws IOException {
+        ByteBuffer data = frame.data;
+        int len = data.remaining();
+        outs.write(data.array(), data.arrayOffset() + data.position(), len);
+        return len;
+    }
+
+    private int window() {
+        return 2 * parallelism;
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        if (parallelism <= 1) {
+            FutureTask<T> future = new FutureTask<T>(task);
+            future.run();
+            return future;
+        }
+        return executor.submit(task);
+    }
+
+    /**
+     * wait for a block task, rethrowing its failure as an IOException
+     */
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for block");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            throw new IOException("Block task failed", cause);
+        }
+    }
+
+    static void readExactly(InputStream ins, byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = ins.read(b, off, len);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of block container");
+            }
+            off += n;
+            len -= n;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package Compression;
+
+/**
+ * block header shared by the block oriented codecs: the block size in the
+ * low 30 bits and how the block is coded in the top 2
+ * | type | original size |
+ * |  2   |    30 bits    |
+ * a stored block holds the data as it is, a constant block the single
+ * byte repeated over the whole block
+ * @author Hang Yuan
+ */
+final class BlockType {
+
+    static final int CODED = 0;
+    static final int STORED = 1;
+    static final int CONSTANT = 2;
+
+    static final int SIZE_BITS = 30;
+    static final int SIZE_MASK = (1 << SIZE_BITS) - 1;
+
+    private BlockType() {
+    }
+
+    static int header(int type, int size) {
+        return (type << SIZE_BITS) | size;
+    }
+
+    static int type(int header) {
+        return header >>> SIZE_BITS;
+    }
+
+    static int size(int header) {
+        return header & SIZE_MASK;
+    }
+
+    /**
+     * whether src[off, off + len) is a single byte repeated, stops at the
+     * first different byte
+     */
+    static boolean isConstant(byte[] src, int off, int len) {
+        for (int i = off + 1; i < off + len; i++) {
+            if (src[i] != src[off]) {
+                return false;
+            }
+        }
+        return len > 0;
+    }
+}
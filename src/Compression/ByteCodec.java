@@ -0,0 +1,285 @@
+package Compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import Compression.Compressors.Codec;
+
+/**
+ * thread-safe, reusable byte array coding with one codec, for services
+ * coding many small payloads: every thread codes with a codec instance of
+ * its own that keeps its tables, dictionaries and buffers from one call to
+ * the next, so a call allocates little beyond the array it returns. The
+ * format is the codec's stream format; calls report no CodecMetrics.
+ *
+ *     ByteCodec huffman = ByteCodec.forCodec(Codec.Huffman);
+ *     byte[] dst = new byte[huffman.maxCompressedLength(len)];
+ *     int size = huffman.compress(src, 0, len, dst, 0);
+ * @author Hang Yuan
+ */
+public final class ByteCodec {
+
+    /**
+     * largest array a thread keeps for the calls returning a new array
+     */
+    static final int MAX_KEPT_SIZE = 1 << 20;
+
+    static final ByteCodec[] CODECS = new ByteCodec[Codec.values().length];
+
+    static {
+        for (Codec codec: Codec.values()) {
+            CODECS[codec.ordinal()] = new ByteCodec(codec);
+        }
+    }
+
+    /**
+     * per-thread state: the codec instance and the array streams around it
+     */
+    class Context {
+        AbstractCompressor compressor = Compressors.newCompressor(codec);
+        ArrayInput input = new ArrayInput();
+        ArrayOutput output = new ArrayOutput();
+
+        public Context() {
+            if (compressor instanceof BlockCompressor) {
+                // one payload per call, its blocks are coded on the calling thread
+                ((BlockCompressor)compressor).setExecutor(null, 1);
+            }
+        }
+    }
+
+    /**
+     * InputStream over an array range, reset for every call
+     */
+    class ArrayInput extends InputStream {
+        byte[] buf;
+        int pos;
+        int end;
+
+        void reset(byte[] src, int off, int len) {
+            buf = src;
+            pos = off;
+            end = off + len;
+        }
+
+        @Override
+        public int read() {
+            return pos < end ? buf[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos == end) {
+                return -1;
+            }
+            len = Math.min(len, end - pos);
+            System.arraycopy(buf, pos, b, off, len);
+            pos += len;
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return end - pos;
+        }
+    }
+
+    /**
+     * OutputStream into a caller's array, or into an array of the thread's
+     * own that grows as needed
+     */
+    class ArrayOutput extends OutputStream {
+        byte[] own = new byte[0];
+        byte[] buf;
+        int start;
+        int pos;
+        boolean growing;
+
+        void reset(byte[] dst, int off) {
+            buf = dst;
+            start = off;
+            pos = off;
+            growing = false;
+        }
+
+        void reset(int capacity) {
+            if (own.length < capacity) {
+                own = new byte[capacity];
+            }
+            buf = own;
+            start = 0;
+            pos = 0;
+            growing = true;
+        }
+
+        int size() {
+            return pos - start;
+        }
+
+        /**
+         * copy of what was written, the own array is dropped when it grew
+         * over MAX_KEPT_SIZE
+         */
+        byte[] toByteArray() {
+            byte[] result = Arrays.copyOfRange(buf, start, pos);
+            own = buf.length > MAX_KEPT_SIZE ? new byte[0] : own;
+            buf = null;
+            return result;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensure(1);
+            buf[pos++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensure(len);
+            System.arraycopy(b, off, buf, pos, len);
+            pos += len;
+        }
+
+        private void ensure(int n) throws IOException {
+            if (n <= buf.length - pos) {
+                return;
+            }
+            if (!growing) {
+                throw new IOException("Destination array too small: " + (buf.length - start)
+                                      + " bytes from offset " + start);
+            }
+            if (pos + (long)n > AbstractCompressor.MAX_ARRAY_SIZE) {
+                throw new IOException("Output over " + AbstractCompressor.MAX_ARRAY_SIZE
+                                      + " bytes does not fit in an array");
+            }
+            long size = Math.max(pos + (long)n, 2L * buf.length);
+            buf = Arrays.copyOf(buf, (int)Math.min(size, AbstractCompressor.MAX_ARRAY_SIZE));
+            own = buf;
+        }
+    }
+
+    final Codec codec;
+    final ThreadLocal<Context> contexts = new ThreadLocal<Context>() {
+        @Override
+        protected Context initialValue() {
+            return new Context();
+        }
+    };
+
+    private ByteCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * the shared instance of a codec
+     */
+    public static ByteCodec forCodec(Codec codec) {
+        return CODECS[codec.ordinal()];
+    }
+
+    public Codec codec() {
+        return codec;
+    }
+
+    /**
+     * largest compressed size of len bytes, a destination this large never
+     * runs out of room
+     */
+    public int maxCompressedLength(int len) {
+        if (len < 0) {
+            throw new IllegalArgumentException("Negative length: " + len);
+        }
+        long max = compressor().maxEncodedLength(len);
+        if (max > AbstractCompressor.MAX_ARRAY_SIZE) {
+            throw new IllegalArgumentException("Input too large for an array: " + len);
+        }
+        return (int)max;
+    }
+
+    /**
+     * compress src[off, off + len) into dst starting at dstOff
+     * @return compressed size
+     * @throws IOException if dst has no room for it, which cannot happen
+     *         with maxCompressedLength(len) bytes of room
+     */
+    public int compress(byte[] src, int off, int len, byte[] dst, int dstOff)
+                throws IOException
+    {
+        checkRange(src, off, len);
+        checkRange(dst, dstOff, 0);
+        Context context = contexts.get();
+        context.output.reset(dst, dstOff);
+        context.compressor.encode(src, off, len, context.output);
+        return context.output.size();
+    }
+
+    /**
+     * compress src[off, off + len)
+     * @return the compressed data, exactly sized
+     */
+    public byte[] compress(byte[] src, int off, int len) throws IOException {
+        checkRange(src, off, len);
+        Context context = contexts.get();
+        context.output.reset(Math.min(maxCompressedLength(len), MAX_KEPT_SIZE));
+        context.compressor.encode(src, off, len, context.output);
+        return context.output.toByteArray();
+    }
+
+    public byte[] compress(byte[] src) throws IOException {
+        return compress(src, 0, src.length);
+    }
+
+    /**
+     * decompress the compressed data in src[off, off + len) into dst
+     * starting at dstOff
+     * @return decompressed size
+     * @throws IOException if the data is corrupted or dst has no room for it
+     */
+    public int decompress(byte[] src, int off, int len, byte[] dst, int dstOff)
+                throws IOException
+    {
+        checkRange(src, off, len);
+        checkRange(dst, dstOff, 0);
+        Context context = contexts.get();
+        context.input.reset(src, off, len);
+        context.output.reset(dst, dstOff);
+        context.compressor.decode(context.input, context.output);
+        return context.output.size();
+    }
+
+    /**
+     * decompress the compressed data in src[off, off + len)
+     * @return the decompressed data, exactly sized
+     */
+    public byte[] decompress(byte[] src, int off, int len) throws IOException {
+        checkRange(src, off, len);
+        Context context = contexts.get();
+        context.input.reset(src, off, len);
+        context.output.reset(Math.min(2 * len + 64, MAX_KEPT_SIZE));
+        context.compressor.decode(context.input, context.output);
+        return context.output.toByteArray();
+    }
+
+    public byte[] decompress(byte[] src) throws IOException {
+        return decompress(src, 0, src.length);
+    }
+
+    /**
+     * the calling thread's codec instance, e.g. for a block of a container;
+     * it must not be used by another thread nor kept across calls
+     */
+    AbstractCompressor compressor() {
+        return contexts.get().compressor;
+    }
+
+    private static void checkRange(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException("Range [" + off + ", " + off + " + " + len
+                                                + ") out of bounds for length " + b.length);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package Compression;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event committed for every compress or decompress operation, with
+ * one field per CodecMetrics.Phase
+ * @author Hang Yuan
+ */
+@Name("Compression.CodecOperation")
+@Label("Codec Operation")
+@Category("Compression")
+@Description("One compress or decompress call of a codec")
+class CodecEvent extends Event {
+
+    @Label("Codec")
+    String codec;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Bytes In")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    long bytesOut;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Histogram")
+    @Timespan
+    long histogramNanos;
+
+    @Label("Build Model")
+    @Timespan
+    long buildModelNanos;
+
+    @Label("Write Header")
+    @Timespan
+    long writeHeaderNanos;
+
+    @Label("Match")
+    @Timespan
+    long matchNanos;
+
+    @Label("Encode")
+    @Timespan
+    long encodeNanos;
+
+    @Label("Flush")
+    @Timespan
+    long flushNanos;
+
+    @Label("Read Header")
+    @Timespan
+    long readHeaderNanos;
+
+    @Label("Decode")
+    @Timespan
+    long decodeNanos;
+
+    /**
+     * copy the measurements and commit, if the event is enabled
+     */
+    void report(CodecMetrics metrics) {
+        if (!shouldCommit()) {
+            return;
+        }
+        codec = metrics.codec();
+        mode = metrics.mode().toString();
+        bytesIn = metrics.bytesIn();
+        bytesOut = metrics.bytesOut();
+        allocatedBytes = metrics.allocatedBytes();
+        histogramNanos = metrics.phaseNanos(CodecMetrics.Phase.Histogram);
+        buildModelNanos = metrics.phaseNanos(CodecMetrics.Phase.BuildModel);
+        writeHeaderNanos = metrics.phaseNanos(CodecMetrics.Phase.WriteHeader);
+        matchNanos = metrics.phaseNanos(CodecMetrics.Phase.Match);
+        encodeNanos = metrics.phaseNanos(CodecMetrics.Phase.Encode);
+        flushNanos = metrics.phaseNanos(CodecMetrics.Phase.Flush);
+        readHeaderNanos = metrics.phaseNanos(CodecMetrics.Phase.ReadHeader);
+        decodeNanos = metrics.phaseNanos(CodecMetrics.Phase.Decode);
+        commit();
+    }
+}
@@ -0,0 +1,13 @@
+package Compression;
+
+/**
+ * receives the metrics of every operation of a compressor
+ * @author Hang Yuan
+ */
+public interface CodecListener {
+
+    /**
+     * an operation finished, called on the thread that ran it
+     */
+    public void operationDone(CodecMetrics metrics);
+}
@@ -0,0 +1,149 @@
+package Compression;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * measurements of one compress or decompress operation: bytes in and out,
+ * wall time in total and per phase, and bytes allocated by the calling
+ * thread where the JVM can tell
+ * @author Hang Yuan
+ */
+public class CodecMetrics {
+
+    /**
+     * codec phases, time not spent in any of them is I/O and setup
+     */
+    public enum Phase {
+        Histogram,
+        BuildModel,
+        WriteHeader,
+        Match,
+        Encode,
+        Flush,
+        ReadHeader,
+        Decode
+    }
+
+    static final com.sun.management.ThreadMXBean THREAD_BEAN = threadBean();
+
+    String codec;
+    AbstractCompressor.Mode mode;
+    long bytesIn = 0;
+    long bytesOut = 0;
+    long totalNanos = 0;
+    long allocatedBytes = -1;
+    long[] phaseNanos = new long[Phase.values().length];
+
+    public CodecMetrics(String codec, AbstractCompressor.Mode mode) {
+        this.codec = codec;
+        this.mode = mode;
+    }
+
+    public String codec() {
+        return codec;
+    }
+
+    public AbstractCompressor.Mode mode() {
+        return mode;
+    }
+
+    public long bytesIn() {
+        return bytesIn;
+    }
+
+    public long bytesOut() {
+        return bytesOut;
+    }
+
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    public long phaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * bytes allocated by the calling thread, -1 if not supported
+     */
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * uncompressed bytes per second
+     */
+    public double throughput() {
+        long raw = mode == AbstractCompressor.Mode.Compress ? bytesIn : bytesOut;
+        return totalNanos == 0 ? 0 : raw * 1e9 / totalNanos;
+    }
+
+    void add(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * flat name -> value view for exporting, phases that took no time
+     * are left out
+     */
+    public Map<String, Long> asMap() {
+        Map<String, Long> map = new LinkedHashMap<String, Long>();
+        map.put("bytesIn", bytesIn);
+        map.put("bytesOut", bytesOut);
+        map.put("totalNanos", totalNanos);
+        if (allocatedBytes >= 0) {
+            map.put("allocatedBytes", allocatedBytes);
+        }
+        for (Phase phase: Phase.values()) {
+            if (phaseNanos[phase.ordinal()] > 0) {
+                map.put("phase." + phase + ".nanos", phaseNanos[phase.ordinal()]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s %s: %d -> %d bytes in %.3f ms (%.1f MB/s)",
+                  codec, mode, bytesIn, bytesOut, totalNanos / 1e6, throughput() / 1e6));
+        for (Phase phase: Phase.values()) {
+            if (phaseNanos[phase.ordinal()] > 0) {
+                sb.append(String.format(", %s %.3f ms", phase, phaseNanos[phase.ordinal()] / 1e6));
+            }
+        }
+        if (allocatedBytes >= 0) {
+            sb.append(", allocated ").append(allocatedBytes).append(" bytes");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * bytes allocated so far by the current thread, -1 if not supported
+     */
+    static long threadAllocatedBytes() {
+        if (THREAD_BEAN == null) {
+            return -1;
+        }
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+                if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunBean;
+                }
+            }
+        }
+        catch (LinkageError e) {
+            // no com.sun.management on this JVM
+        }
+        return null;
+    }
+}
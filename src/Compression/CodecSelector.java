@@ -0,0 +1,127 @@
+package Compression;
+
+import java.util.Arrays;
+import Compression.Compressors.Codec;
+
+/**
+ * picks a codec for a block from a small sample of it: order-0 entropy
+ * for the entropy coders, repeated 4-byte strings and runs for LZW, and
+ * stored when neither would gain
+ * @author Hang Yuan
+ */
+class CodecSelector {
+
+    /**
+     * the sample is made of SLICE_SIZE slices spread over the block, at
+     * most SAMPLE_SIZE bytes in total
+     */
+    static final int SAMPLE_SIZE = 1 << 14;
+    static final int SLICE_SIZE = 1 << 10;
+
+    static final int HASH_BITS = 12;
+
+    /**
+     * thresholds, bits per byte and fractions of the sampled bytes
+     */
+    static final double STORED_ENTROPY = 7.5;
+    static final double STORED_MATCHES = 0.05;
+    static final double LZW_MATCHES = 0.35;
+    static final double LZW_RUNS = 0.6;
+    static final double ARITH_TOP_SYMBOL = 0.4;
+
+    /**
+     * every codec select() returns
+     */
+    static final Codec[] CODECS = {Codec.Stored, Codec.LZW, Codec.Arith, Codec.Huffman};
+
+    static final ThreadLocal<CodecSelector> SELECTORS = new ThreadLocal<CodecSelector>() {
+        @Override
+        protected CodecSelector initialValue() {
+            return new CodecSelector();
+        }
+    };
+
+    int[] counts = new int[256];
+    int[] head = new int[1 << HASH_BITS];
+
+    // statistics of the last sample
+    double entropy;
+    double matches;
+    double runs;
+    double topSymbol;
+
+    /**
+     * the calling thread's selector, its tables are reused
+     */
+    static CodecSelector forThread() {
+        return SELECTORS.get();
+    }
+
+    /**
+     * choose the codec for src[off, off + len)
+     */
+    public Codec select(byte[] src, int off, int len) {
+        sample(src, off, len);
+        if (len == 0 || (entropy >= STORED_ENTROPY && matches + runs < STORED_MATCHES)) {
+            return Codec.Stored;
+        }
+        if (matches >= LZW_MATCHES || runs >= LZW_RUNS) {
+            return Codec.LZW;
+        }
+        // huffman spends at least a bit per byte, arithmetic coding does
+        // not, it pays off on skewed data only as it is much slower
+        if (topSymbol >= ARITH_TOP_SYMBOL) {
+            return Codec.Arith;
+        }
+        return Codec.Huffman;
+    }
+
+    /**
+     * gather statistics over evenly spread slices of the block
+     */
+    void sample(byte[] src, int off, int len) {
+        Arrays.fill(counts, 0);
+        Arrays.fill(head, -1);
+        int slices = Math.max(1, Math.min(SAMPLE_SIZE, len) / SLICE_SIZE);
+        long step = len / slices;
+        int sampled = 0;
+        int matched = 0;
+        int repeated = 0;
+        for (int s = 0; s < slices; s++) {
+            int from = off + (int)(s * step);
+            int to = Math.min(from + SLICE_SIZE, off + len);
+            for (int i = from; i < to; i++) {
+                counts[src[i] & 0xFF]++;
+                if (i > from && src[i] == src[i - 1]) {
+                    repeated++;
+                }
+                else if (i + 4 <= to) {
+                    int key = (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8
+                              | (src[i + 2] & 0xFF) << 16 | src[i + 3] << 24;
+                    int slot = (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+                    int prev = head[slot];
+                    if (prev >= 0 && src[prev] == src[i] && src[prev + 1] == src[i + 1]
+                        && src[prev + 2] == src[i + 2] && src[prev + 3] == src[i + 3])
+                    {
+                        matched++;
+                    }
+                    head[slot] = i;
+                }
+            }
+            sampled += to - from;
+        }
+
+        entropy = 0;
+        int top = 0;
+        for (int c: counts) {
+            if (c > 0) {
+                double p = (double)c / sampled;
+                entropy -= p * Math.log(p) / Math.log(2);
+                top = Math.max(top, c);
+            }
+        }
+        matches = sampled == 0 ? 0 : (double)matched / sampled;
+        runs = sampled == 0 ? 0 : (double)repeated / sampled;
+        topSymbol = sampled == 0 ? 0 : (double)top / sampled;
+    }
+}
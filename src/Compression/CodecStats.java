@@ -0,0 +1,40 @@
+package Compression;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * listener aggregating metrics per codec and mode, for export to
+ * monitoring; one instance can be shared by compressors on many threads
+ * @author Hang Yuan
+ */
+public class CodecStats implements CodecListener {
+
+    Map<String, Long> totals = new TreeMap<String, Long>();
+
+    @Override
+    public synchronized void operationDone(CodecMetrics metrics) {
+        String prefix = metrics.codec() + "." + metrics.mode() + ".";
+        add(prefix + "operations", 1);
+        for (Map.Entry<String, Long> entry: metrics.asMap().entrySet()) {
+            add(prefix + entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * running totals, keys are codec.mode.metric, e.g.
+     * HuffmanTree.Compress.bytesIn or LZSS.Decompress.phase.Decode.nanos
+     */
+    public synchronized Map<String, Long> snapshot() {
+        return new TreeMap<String, Long>(totals);
+    }
+
+    public synchronized void reset() {
+        totals.clear();
+    }
+
+    private void add(String key, long value) {
+        Long old = totals.get(key);
+        totals.put(key, old == null ? value : old + value);
+    }
+}
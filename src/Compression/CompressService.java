@@ -1,5 +1,10 @@
 package Compression;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
 /**
  * compressor interface
  * @author Hang Yuan
@@ -17,4 +22,48 @@ public interface CompressService {
      * @return original file size
      */
     public long decompress();
-}
\ No newline at end of file
+
+    /**
+     * compress everything read from ins and write it to outs,
+     * neither stream is closed
+     * @return compressed size
+     */
+    public long compress(InputStream ins, OutputStream outs) throws IOException;
+
+    /**
+     * decompress a compressed stream from ins and write it to outs,
+     * neither stream is closed
+     * @return original size
+     */
+    public long decompress(InputStream ins, OutputStream outs) throws IOException;
+
+    /**
+     * compress the remaining bytes of src
+     * @return compressed data, ready to read
+     */
+    public ByteBuffer compress(ByteBuffer src) throws IOException;
+
+    /**
+     * decompress the remaining bytes of src
+     * @return original data, ready to read
+     */
+    public ByteBuffer decompress(ByteBuffer src) throws IOException;
+
+    /**
+     * report the metrics of every following operation to listener
+     */
+    public void addListener(CodecListener listener);
+
+    public void removeListener(CodecListener listener);
+
+    /**
+     * print progress and metrics to the console, off by default
+     */
+    public void setVerbose(boolean verbose);
+
+    /**
+     * file mode: read ahead and write behind on threads of their own so
+     * I/O overlaps the codec, on by default with more than one processor
+     */
+    public void setOverlappedIO(boolean overlappedIO);
+}
@@ -7,8 +7,16 @@ import java.nio.ByteBuffer;
 import java.lang.Math;
 
 public class CompressTest {
+    /**
+     * usage: CompressTest fileName [codec], codec defaults to Arith
+     */
     public static void main(String[] args) throws Exception {
-        CompressService compressor = Compressors.newArithCoder(args[0]);
+        Compressors.Codec codec = Compressors.Codec.Arith;
+        if (args.length > 1) {
+            codec = Compressors.Codec.valueOf(args[1]);
+        }
+        CompressService compressor = Compressors.newCompressor(args[0], codec);
+        compressor.setVerbose(true);
         
         compressor.compress();
         compressor.decompress();
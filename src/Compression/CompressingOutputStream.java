@@ -0,0 +1,119 @@
+package Compression;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.FilterOutputStream;
+import Compression.CompressService;
+
+/**
+ * OutputStream wrapper: bytes written to it are compressed by the given
+ * compressor on its own thread and sent to the underlying stream as the
+ * codec produces them. Writes pass through a small bounded pipe, so the
+ * memory held is what the codec itself keeps per block.
+ * @author Hang Yuan
+ */
+public class CompressingOutputStream extends FilterOutputStream {
+
+    /**
+     * compresses what comes through the pipe into the underlying stream
+     */
+    class Worker implements Runnable {
+        public void run() {
+            try {
+                compressor.compress(input, out);
+            }
+            catch (IOException e) {
+                error = e;
+            }
+            catch (RuntimeException e) {
+                error = new IOException("Compression failed", e);
+            }
+            try {
+                // drop the data after an error but keep the writer going
+                input.drain();
+            }
+            catch (IOException e) {
+                // interrupted, the writer sees the error
+            }
+        }
+    }
+
+    CompressService compressor;
+    Pipe pipe = new Pipe();
+    Pipe.Output output = pipe.new Output();
+    Pipe.Input input = pipe.new Input();
+    Thread worker;
+    volatile IOException error = null;
+    boolean closed = false;
+
+    /**
+     * constructor
+     * @param outs stream receiving compressed data
+     * @param compressor compressor to use
+     */
+    public CompressingOutputStream(OutputStream outs, CompressService compressor) {
+        super(outs);
+        this.compressor = compressor;
+        worker = new Thread(new Worker(), "compress");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        check();
+        output.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        check();
+        output.write(b, off, len);
+    }
+
+    /**
+     * hand the buffered bytes to the compressor, the compressed data
+     * reaches the underlying stream as the codec finishes its blocks
+     */
+    @Override
+    public void flush() throws IOException {
+        check();
+        output.flush();
+    }
+
+    /**
+     * end the data, wait for the compressor and close the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            output.close();
+            worker.join();
+        }
+        catch (InterruptedException e) {
+            worker.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted compressing");
+        }
+        finally {
+            out.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void check() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
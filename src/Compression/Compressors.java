@@ -1,14 +1,76 @@
 package Compression;
 
+import java.io.IOException;
 import Compression.HuffmanTree;
 import Compression.ArithCoder;
 import Compression.DictLZW;
+import Compression.LZSS;
+import Compression.LZHuffman;
 
 /**
  *  Factory class: producing compressors
  *  @author Hang Yuan
  */
 public class Compressors {
+
+    /**
+     * codecs available to the block container, the id is stored in the
+     * container header; Auto picks a codec per block and stores its id
+     * in the frame
+     */
+    public enum Codec {
+        Huffman(1, "huf"),
+        Arith(2, "art"),
+        LZW(3, "lzw"),
+        LZSS(4, "lzs"),
+        LZHuffman(5, "lzh"),
+        Stored(6, "raw"),
+        Auto(7, "blk");
+
+        final int id;
+        final String postFix;
+
+        Codec(int id, String postFix) {
+            this.id = id;
+            this.postFix = postFix;
+        }
+
+        public int id() {
+            return id;
+        }
+
+        public String postFix() {
+            return postFix;
+        }
+
+        /**
+         * look up a codec by its container id
+         * @return codec, or null if unknown
+         */
+        public static Codec forId(int id) {
+            for (Codec codec: values()) {
+                if (codec.id == id) {
+                    return codec;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * look up the codec writing files with the given postfix, block
+         * containers map to Auto
+         * @return codec, or null if unknown
+         */
+        public static Codec forPostFix(String postFix) {
+            for (Codec codec: values()) {
+                if (codec.postFix.equals(postFix)) {
+                    return codec;
+                }
+            }
+            return null;
+        }
+    }
+
     /**
      * create a huffman tree compressor
      */
@@ -30,5 +92,147 @@ public class Compressors {
         return new DictLZW(fileName);
     }
 
+    /**
+     * create a LZSS sliding window compressor
+     */
+    public static LZSS newLZSS(String fileName) {
+        return new LZSS(fileName);
+    }
+
+    /**
+     * create a deflate style LZ77 + Huffman compressor
+     */
+    public static LZHuffman newLZHuffman(String fileName) {
+        return new LZHuffman(fileName);
+    }
 
-}
\ No newline at end of file
+    /**
+     * create a codec storing the data as it is
+     */
+    public static StoredCodec newStoredCodec(String fileName) {
+        return new StoredCodec(fileName);
+    }
+
+    /**
+     * create a huffman tree compressor for streams and buffers
+     */
+    public static HuffmanTree newHuffmanTree() {
+        return new HuffmanTree();
+    }
+
+    /**
+     * create an arithmetic compressor for streams and buffers
+     */
+    public static ArithCoder newArithCoder() {
+        return new ArithCoder();
+    }
+
+    /**
+     * create a dict LZW compressor for streams and buffers
+     */
+    public static DictLZW newDictLZW() {
+        return new DictLZW();
+    }
+
+    /**
+     * create a LZSS sliding window compressor for streams and buffers
+     */
+    public static LZSS newLZSS() {
+        return new LZSS();
+    }
+
+    /**
+     * create a deflate style LZ77 + Huffman compressor for streams and buffers
+     */
+    public static LZHuffman newLZHuffman() {
+        return new LZHuffman();
+    }
+
+    /**
+     * create a codec storing the data as it is, for streams and buffers
+     */
+    public static StoredCodec newStoredCodec() {
+        return new StoredCodec();
+    }
+
+    /**
+     * create a compressor of the given codec for streams and buffers,
+     * Auto is a block container choosing the codec of every block
+     */
+    public static AbstractCompressor newCompressor(Codec codec) {
+        switch (codec) {
+            case Huffman:
+                return newHuffmanTree();
+            case Arith:
+                return newArithCoder();
+            case LZW:
+                return newDictLZW();
+            case LZSS:
+                return newLZSS();
+            case LZHuffman:
+                return newLZHuffman();
+            case Stored:
+                return newStoredCodec();
+            case Auto:
+                return newBlockCompressor(Codec.Auto);
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+    }
+
+    /**
+     * create a compressor of the given codec for a file
+     */
+    public static AbstractCompressor newCompressor(String fileName, Codec codec) {
+        switch (codec) {
+            case Huffman:
+                return newHuffmanTree(fileName);
+            case Arith:
+                return newArithCoder(fileName);
+            case LZW:
+                return newDictLZW(fileName);
+            case LZSS:
+                return newLZSS(fileName);
+            case LZHuffman:
+                return newLZHuffman(fileName);
+            case Stored:
+                return newStoredCodec(fileName);
+            case Auto:
+                return newBlockCompressor(fileName, Codec.Auto);
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+    }
+
+    /**
+     * create a parallel block compressor for a file, decompressing
+     * takes the codec from the file header
+     */
+    public static BlockCompressor newBlockCompressor(String fileName, Codec codec) {
+        return new BlockCompressor(fileName, codec);
+    }
+
+    /**
+     * create a parallel block compressor for streams and buffers
+     */
+    public static BlockCompressor newBlockCompressor(Codec codec) {
+        return new BlockCompressor(codec);
+    }
+
+    /**
+     * choose a codec for data from a sample of it: Stored, Huffman,
+     * Arith or LZW
+     */
+    public static Codec selectCodec(byte[] src, int off, int len) {
+        return CodecSelector.forThread().select(src, off, len);
+    }
+
+    /**
+     * open a block container file for random access reads
+     */
+    public static SeekableDecompressor newSeekableDecompressor(String fileName) 
+                throws IOException 
+    {
+        return new SeekableDecompressor(fileName);
+    }
+}
@@ -0,0 +1,128 @@
+package Compression;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.io.FilterInputStream;
+import Compression.CompressService;
+
+/**
+ * InputStream wrapper: reads compressed data from the underlying stream
+ * and returns the decompressed bytes. The compressor decodes on its own
+ * thread into a small bounded pipe, so only a few buffers of output are
+ * held however large the stream is.
+ * @author Hang Yuan
+ */
+public class DecompressingInputStream extends FilterInputStream {
+
+    /**
+     * decompresses the underlying stream into the pipe
+     */
+    class Worker implements Runnable {
+        public void run() {
+            try {
+                try {
+                    compressor.decompress(in, output);
+                    output.close();
+                }
+                catch (IOException e) {
+                    output.fail(e);
+                }
+                catch (RuntimeException e) {
+                    output.fail(new IOException("Decompression failed", e));
+                }
+            }
+            catch (IOException e) {
+                // interrupted by close, nobody is reading
+            }
+        }
+    }
+
+    CompressService compressor;
+    Pipe pipe = new Pipe();
+    Pipe.Output output = pipe.new Output();
+    Pipe.Input input = pipe.new Input();
+    Thread worker = null;
+    boolean closed = false;
+
+    /**
+     * constructor
+     * @param ins stream of compressed data
+     * @param compressor compressor the data was compressed with
+     */
+    public DecompressingInputStream(InputStream ins, CompressService compressor) {
+        super(ins);
+        this.compressor = compressor;
+    }
+
+    @Override
+    public int read() throws IOException {
+        start();
+        return input.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        start();
+        return input.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        start();
+        return input.skip(n);
+    }
+
+    /**
+     * bytes decoded and not read yet in the current buffer
+     */
+    @Override
+    public int available() throws IOException {
+        start();
+        return input.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * stop the compressor and close the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (worker != null) {
+            // wakes the compressor waiting on the pipe or the input
+            worker.interrupt();
+        }
+        in.close();
+        try {
+            if (worker != null) {
+                worker.join();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted decompressing");
+        }
+    }
+
+    /*
+     * start decompressing on first access
+     */
+    private void start() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (worker == null) {
+            worker = new Thread(new Worker(), "decompress");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+}
@@ -1,23 +1,9 @@
 package Compression;
 
-import java.io.Serializable;
-import java.util.Map;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Base64;
-import java.lang.StringBuilder;
-import java.lang.Math;
 import java.io.IOException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.InputStream;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.nio.ByteBuffer;
 import Compression.AbstractCompressor;
 
 /**
@@ -27,400 +13,499 @@ import Compression.AbstractCompressor;
 public class DictLZW extends AbstractCompressor {
 
     /**
-     * dictionary record
+     * CLEAR resets the dictionary, 257 is never written; dictionary words
+     * start at FIRST_CODE and the data ends with an empty segment
      */
-    class DictRecord {
-        int encode;
-        int len;
-        String word = null;
-        public DictRecord(int encode, int len, String word) {
-            this.encode = encode;
-            this.len = len;
-            this.word = word;
-        }
-    }
+    static final int CLEAR = 256;
+    static final int FIRST_CODE = 258;
 
     /**
-     * constructor
-     * @param fileName file to be compressed
+     * code width bounds, the dictionary holds 1 << maxBits codes
      */
-    public DictLZW(String pathName) {
-        super(pathName, "lzw");
-    }
+    static final int MIN_BITS = 9;
+    static final int MAX_BITS = 20;
+    static final int DEFAULT_MAX_BITS = 16;
 
     /**
-     * compress a file
-     * | original size | encode length |encoded bytes |
-     * |   8 bytes     |    4 byte     |   ... ...    |
-     * @return encoded size
+     * input bytes between compression ratio checks of a full dictionary
      */
-    @Override
-    public long compress() {
-        if (mode() != AbstractCompressor.Mode.Compress) {
-            System.err.println("Error: Not in Compress mode");
-            return 0;
-        }
+    static final int CHECK_GAP = 1 << 14;
 
-        // begin compressing
-        System.out.println("Start Compressing ...");
-        File file = new File(fileName);
-        try {
-            // start encoding
-            BufferedInputStream ins = 
-                new BufferedInputStream(new FileInputStream(fileName));
-
-            // read the orginal file and build the dictionary
-            HashMap<String, DictRecord> map = new HashMap<String, DictRecord>();
-            ArrayList<Integer> output = new ArrayList<Integer>();
-            StringBuilder word = new StringBuilder();
-            int nextNo = 255;
-            byte nextByte = (byte)ins.read();
-            word.append((char)nextByte);
-            //System.out.println("read byte: " + (byte)nextByte);
-            for (int i = 0; i < fileSize; i++) {
-                byte crtByte = nextByte;
-                // process successive bytes
-                if (i < fileSize - 1) {
-                    nextByte = (byte)ins.read();
-                    //System.out.println("read byte: " + (byte)nextByte);
-                    String oldWord = word.toString();
-                    word.append((char)nextByte);
-                    if (!map.containsKey(word.toString())) {
-                        // write word to output
-                        if (oldWord.length() == 1) {
-                            output.add(((int)crtByte)&0xFF);
-                        }
-                        else {
-                            output.add(map.get(oldWord).encode);
-                        }
-
-                        // add current word as a new record into dictionary
-                        map.put(word.toString(), 
-                                new DictRecord(++nextNo, word.length(), word.toString()));
-                        // System.out.printf("adding %d, {", nextNo);
-                        // for (char b: word.toString().toCharArray()) {
-                        //     System.out.printf("%d ", (byte)b);
-                        // }
-                        // System.out.println("\b}");
-                        word.setLength(0);
-                        word.append((char)nextByte);
-                    }
-                }
-                else {
-                    // reach EOF
-                    if (word.length() == 1) {
-                        output.add(((int)crtByte)&0xFF);
-                    }
-                    else {
-                        output.add(map.get(word.toString()).encode);
-                    }
-                }
-            }
+    /**
+     * input coded per segment, a segment the codes would not shrink is stored
+     */
+    static final int SEGMENT_SIZE = 1 << 16;
 
-            // begin writing zip file
-            BufferedOutputStream outs = 
-                new BufferedOutputStream(new FileOutputStream(zipFileName));
-
-            // compute encode word length
-            int wordLen = (int)Math.ceil(Math.log(map.size() + 256) / Math.log(2));
-            wordLen = (1 + (wordLen - 1) / 4) * 4;
-
-            /* | original size | encode length |encoded bytes |
-             * |   8 bytes     |    4 byte     |   ... ...    |*/
-            WordStream ws = new WordStream(wordLen, outs);
-            // write original file size
-            ws.dumpLong(fileSize);
-            // write word length
-            ws.dumpInt(wordLen);
-            // dump encoded bytes
-            ws.dumpBytes(output);
-
-            compressedSize = (int)(output.size() * wordLen / 8.0);
-            System.out.println("wordLen = " + wordLen);
-            System.out.println("Compressed Size = " + compressedSize);
-            ins.close();
-            outs.close();
-        }
-        catch (IOException e) {
-           e.printStackTrace();
-        }
+    int maxBits = DEFAULT_MAX_BITS;
 
-        // go to decompress mode
-        setDecompressMode();
-        setCompressRate(((double)compressedSize) / fileSize);
-        System.out.println("Done: Compression Rate = " + 
-                           String.format("%.2f", getCompressRate()*100) + "%\n");
-        return compressedSize;
-    }
+    // kept from one operation to the next
+    CodeTable table = null;
+    byte[] scratch = new byte[0];
+    byte[] segment = null;
+    int[] prefixes = new int[0];
+    byte[] suffixes = new byte[0];
+    int[] lengths = new int[0];
 
     /**
-     * decompress file
-     * @return original file size
+     * encoder dictionary: open addressing hash table from
+     * (prefix code << 8 | next byte) to code, linear probing over
+     * primitive arrays so a lookup-or-insert is a single probe sequence.
+     * A slot holds its key in the low 32 bits and the generation it was
+     * added in above them; clearing starts a new generation, so it does
+     * not touch the table however large it grew
      */
-    @Override
-    public long decompress() {
-        // check file ending with ".huf"
-        if (mode() != AbstractCompressor.Mode.Decompress) {
-            System.err.println("Error: Not in Decompress mode");
-            return 0;
+    class CodeTable {
+        static final long EMPTY = -1;
+
+        long[] keys;
+        int[] values;
+        int mask;
+        int size = 0;
+        int generation = 0;
+        long stamp = 0;     // generation << 32
+
+        public CodeTable() {
+            keys = new long[1 << 12];
+            values = new int[1 << 12];
+            mask = keys.length - 1;
+            Arrays.fill(keys, EMPTY);
         }
 
-        try {
-            System.out.println("Start Decompressing ...");
-            BufferedInputStream ins = 
-                new BufferedInputStream(new FileInputStream(zipFileName));
-
-            WordStream ws = new WordStream(0, ins);
-
-            // read original file size
-            fileSize = ws.readLong();
-            File file = new File(zipFileName);
-            compressedSize = file.length();
-            setCompressRate(((double)compressedSize) / fileSize);
-
-            // read encode length
-            int wordLen = ws.readInt();
-            ws.setWordLen(wordLen);
-            
-            // output: decompressed file
-            BufferedOutputStream outs = 
-                new BufferedOutputStream(new FileOutputStream(fileName + ".out"));
-
-            // byte encoder and decoder
-            Base64.Encoder encoder = Base64.getEncoder();
-            Base64.Decoder decoder = Base64.getDecoder();
-
-            // initialize byte count and prob distribution
-            int crtSize = 0;
-            ArrayList<DictRecord> table = new ArrayList<DictRecord>();
-            byte[] lastEntry = null;
-            
-            while (crtSize < fileSize) {
-                int encode = ws.readNextWord();
-                //System.out.println("\ndumping: " + encode);
-
-                byte[] entry = null;
-                if (encode < 256) {
-                    outs.write((byte)encode);
-                    //System.out.println("writing: " + (byte)encode);
-                    entry = new byte[1];
-                    entry[0] = (byte)encode;
-                    crtSize++;
+        /**
+         * look up word prefix + b, adding it as code if missing and code >= 0
+         * @return existing code, or -1 if not found
+         */
+        public int findOrAdd(int prefix, int b, int code) {
+            long key = stamp | ((long)prefix << 8) | b;
+            int slot = hash(key) & mask;
+            while (true) {
+                long k = keys[slot];
+                if (k == key) {
+                    return values[slot];
                 }
-                else {
-                    if (encode - 256 >= table.size()) {
-                        entry = new byte[lastEntry.length + 1];
-                        System.arraycopy(lastEntry, 0, entry, 0, lastEntry.length);
-                        entry[lastEntry.length] = lastEntry[0];
+                if ((k & ~0xFFFFFFFFL) != stamp) {
+                    // empty, or left from an earlier generation
+                    if (code < 0) {
+                        return -1;
                     }
-                    else {
-                        entry = decoder.decode(table.get(encode - 256).word.getBytes());
+                    keys[slot] = key;
+                    values[slot] = code;
+                    if (++size > (mask >> 1)) {
+                        grow();
                     }
-                    // for (byte b: entry) {
-                    //     System.out.println("writing: " + b);
-                    // }
-                    outs.write(entry, 0, entry.length);
-                    crtSize += entry.length;
+                    return -1;
                 }
-                if (lastEntry != null) {
-                    // add (lastEntry + entry[0]) to dict
-                    byte[] newWord = new byte[lastEntry.length + 1];
-                    System.arraycopy(lastEntry, 0, newWord, 0, lastEntry.length);
-                    newWord[lastEntry.length] = entry[0];
-                    // System.out.printf("adding %d, {", table.size() + 256);
-                    // for (byte b: newWord) {
-                    //     System.out.printf("%d ", (byte)b);
-                    // }
-                    // System.out.println("\b}");
-                    table.add(new DictRecord(table.size(), newWord.length, 
-                                             new String(encoder.encode(newWord))) );
-                }
-                lastEntry = entry;
+                slot = (slot + 1) & mask;
             }
-            
+        }
 
-            ins.close();
-            outs.close();
+        public void clear() {
+            size = 0;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(keys, EMPTY);
+                generation = -1;
+            }
+            generation++;
+            stamp = (long)generation << 32;
         }
-        catch (IOException e) {
-           e.printStackTrace();
+
+        private int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int)(h >>> 32);
         }
 
-        System.out.println("Done: Decompressed File Size = " + fileSize + " bytes");
-        return fileSize;
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            mask = keys.length - 1;
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if ((oldKeys[i] & ~0xFFFFFFFFL) == stamp) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (keys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
     }
-    
 
     /**
-     *  WordStream: to read and write to file with word of given length
+     * streaming encoder: codes are written as soon as a word ends, starting
+     * at MIN_BITS wide and growing with the dictionary up to maxBits. The
+     * input is coded in segments that end on a word, each behind a header
+     * | segment header | codes, padded to a byte, or the segment itself |
+     * |    4 bytes     |                   .....                       |
+     * see BlockType for the header. The dictionary carries over coded and
+     * constant segments and is cleared after a stored one.
      */
-    class WordStream {
-        
-        int wordLen; // word length must be a multiple of 4
-        OutputStream outs;
-        InputStream ins;
-
-        int index;
-        byte crtByte;
-        int mask;
-
-        public WordStream(int wordLen, OutputStream outs) {
-            this.wordLen = wordLen;
-            this.outs = outs;
-            reset();
-        }
-
-        public WordStream(int wordLen, InputStream ins) {
-            this.wordLen = wordLen;
-            this.ins = ins;
+    class Encoder {
+        BitWriter out;
+        BitWriter bw;
+        CodeTable dict;
+        int maxCode;
+        int width;
+        int nextCode;
+        int prefix = -1;
+
+        // compression ratio since the last reset, checked once the dictionary is full
+        long inCount;
+        long outBits;
+        long checkpoint;
+        long bestRatio;
+
+        public Encoder(BitWriter out) throws IOException {
+            this.out = out;
+            this.maxCode = 1 << maxBits;
+            // a byte costs at most one code of maxBits, CLEAR codes aside
+            int scratchSize = SEGMENT_SIZE / 8 * (maxBits + 1) + 16;
+            if (scratch.length < scratchSize) {
+                scratch = new byte[scratchSize];
+            }
+            if (table == null) {
+                table = new CodeTable();
+            }
+            else {
+                table.clear();
+            }
+            this.dict = table;
+            out.writeByte(maxBits);
             reset();
         }
 
-        public void reset() {
-            index = 0;
-            crtByte = 0;
-            mask = (1<<wordLen) - 1;
-        }
-
-        /**
-         * dump a long int
-         */
-        public void dumpLong(long num) throws IOException {
-            ByteBuffer bBuf = ByteBuffer.allocate(8);
-            bBuf.putLong(num); // orignal file size
-            outs.write(bBuf.array(), 0, 8);
-        }
-
         /**
-         * dump an int
+         * feed bytes, may be called any number of times
          */
-        public void dumpInt(int num) throws IOException {
-            ByteBuffer bBuf = ByteBuffer.allocate(4);
-            bBuf.putInt(num); // orignal file size
-            outs.write(bBuf.array(), 0, 4);
-        }
-
-        /**
-         * read a long int
-         */
-        public long readLong() throws IOException {
-            byte[] barray = new byte[8];
-            ins.read(barray, 0, 8);
-            return ByteBuffer.wrap(barray).getLong();
+        public void update(byte[] src, int off, int len) throws IOException {
+            for (int pos = off; pos < off + len; pos += SEGMENT_SIZE) {
+                segment(src, pos, Math.min(SEGMENT_SIZE, off + len - pos));
+            }
         }
 
         /**
-         * read an int
+         * write the end marker, an empty segment header, and flush the bits
          */
-        public int readInt() throws IOException {
-            byte[] barray = new byte[4];
-            ins.read(barray, 0, 4);
-            return ByteBuffer.wrap(barray).getInt();
+        public void finish() throws IOException {
+            long start = phaseStart();
+            out.writeInt(0);
+            out.flush();
+            phaseDone(CodecMetrics.Phase.Flush, start);
         }
 
         /**
-         * dump output as bytes with given word length
+         * code one segment of at most SEGMENT_SIZE bytes
          */
-        public void dumpNextWord(int code) throws IOException
-        {
-            //System.out.println("\ndumping: " + code);
-            if (wordLen%8 == 0) {
-                for (int i = 0; i < wordLen / 8; i++) {
-                    crtByte = (byte)((code>>(i*8))&0xFF);
-                    outs.write(crtByte);
-                    //System.out.println("1 writing: " + crtByte);
-                }
+        private void segment(byte[] src, int off, int len) throws IOException {
+            long start = phaseStart();
+            if (BlockType.isConstant(src, off, len)) {
+                out.writeInt(BlockType.header(BlockType.CONSTANT, len));
+                out.writeByte(src[off]);
+                phaseDone(CodecMetrics.Phase.Encode, start);
+                return;
             }
-            else {
-                if (index == 4) {
-                    crtByte = (byte)(crtByte | ((byte)((code&0xF)<<4)));
-                    outs.write(crtByte);
-                    //System.out.println("2 writing: " + crtByte);
-                    for (int i = 0; i < wordLen / 8; i++) {
-                        crtByte = (byte)((code>>(i*8+index))&0xFF);
-                        outs.write(crtByte);
-                        //System.out.println("3 writing: " + crtByte);
-                    }
-                    index = 0;
+            bw = new BitWriter(scratch, 0);
+            prefix = src[off] & 0xFF;
+            inCount++;
+            for (int i = off + 1; i < off + len; i++) {
+                int b = src[i] & 0xFF;
+                inCount++;
+                // extend the current word, or emit it and add word + b
+                int code = dict.findOrAdd(prefix, b, nextCode < maxCode ? nextCode : -1);
+                if (code >= 0) {
+                    prefix = code;
+                    continue;
                 }
-                else {
-                    int i = 0;
-                    for (i = 0; i < wordLen / 8; i++) {
-                        crtByte = (byte)((code>>(i*8+index))&0xFF);
-                        outs.write(crtByte);
-                        //System.out.println("3 writing: " + crtByte);
-                    }
-                    crtByte = (byte)((code>>(i*8))&0xF);
-                    //System.out.println("2 crtByte = " + crtByte);
-                    index = 4;
+                emit(prefix);
+                prefix = b;
+                if (nextCode == maxCode && inCount >= checkpoint) {
+                    checkRatio();
                 }
             }
-        }
-
-        public void finishDump() throws IOException {
-            if (index == 4) {
-                //System.out.println("4 writing: " + crtByte);
-                outs.write(crtByte);
+            // the segment ends on a word, no entry is added for it
+            emit(prefix);
+            prefix = -1;
+            bw.flush();
+
+            int size = bw.position();
+            if (size >= len) {
+                out.writeInt(BlockType.header(BlockType.STORED, len));
+                out.writeBytes(src, off, len);
+                dict.clear();
+                reset();
+            }
+            else {
+                out.writeInt(BlockType.header(BlockType.CODED, len));
+                out.writeBytes(scratch, 0, size);
             }
+            phaseDone(CodecMetrics.Phase.Encode, start);
         }
 
-        public void dumpBytes(ArrayList<Integer> output) throws IOException {
-            for (Integer code: output) {
-                dumpNextWord(code);
+        private void emit(int code) throws IOException {
+            bw.writeBits(code, width);
+            outBits += width;
+            if (nextCode < maxCode) {
+                // the decoder widens after reading the same code
+                nextCode++;
+                if (nextCode == (1 << width) && width < maxBits) {
+                    width++;
+                }
             }
-            finishDump();
-            reset();
         }
 
         /**
-         *  read next word from input stream
+         * the dictionary is full and frozen: start over when it stops paying off
          */
-        public int readNextWord() {
-            try{
-                return readWord();
-            }
-            catch (IOException e) {
-               e.printStackTrace();
+        private void checkRatio() throws IOException {
+            checkpoint = inCount + CHECK_GAP;
+            long ratio = (inCount << 8) / Math.max(outBits, 1);
+            if (ratio > bestRatio) {
+                bestRatio = ratio;
+                return;
             }
-            return -1;
+            bw.writeBits(CLEAR, width);
+            dict.clear();
+            reset();
+        }
+
+        private void reset() {
+            width = MIN_BITS;
+            nextCode = FIRST_CODE;
+            inCount = 0;
+            outBits = 0;
+            checkpoint = CHECK_GAP;
+            bestRatio = 0;
+        }
+    }
+
+    /**
+     * constructor
+     * @param fileName file to be compressed
+     */
+    public DictLZW(String pathName) {
+        super(pathName, "lzw");
+    }
+
+    /**
+     * constructor for stream compressing
+     */
+    public DictLZW() {
+        super();
+    }
+
+    /**
+     * set the widest code, i.e. the dictionary size
+     */
+    public void setMaxBits(int maxBits) {
+        if (maxBits < MIN_BITS || maxBits > MAX_BITS) {
+            throw new IllegalArgumentException("max code bits out of range: " + maxBits);
+        }
+        this.maxBits = maxBits;
+    }
+
+    public int getMaxBits() {
+        return maxBits;
+    }
+
+    /**
+     * compress a stream in one pass with constant memory
+     * | max code bits | segment | segment | ... | 0 (4 bytes) |
+     * |    1 byte     |    see Encoder    |
+     * @return compressed size
+     */
+    @Override
+    protected long compressStream(InputStream ins, OutputStream outs) throws IOException {
+        BitWriter bw = newBitWriter(outs);
+        Encoder encoder = new Encoder(bw);
+        byte[] buf = segment();
+        int n;
+        while ((n = HuffmanTree.readBlock(ins, buf)) > 0) {
+            encoder.update(buf, 0, n);
+        }
+        encoder.finish();
+        return bw.bytesWritten();
+    }
+
+    /**
+     * encode bytes
+     * | max code bits | segment | segment | ... | 0 (4 bytes) |
+     * |    1 byte     |    see Encoder    |
+     * @return encoded size
+     */
+    @Override
+    protected long encode(byte[] src, int off, int len, OutputStream outs)
+                throws IOException
+    {
+        BitWriter bw = newBitWriter(outs);
+        Encoder encoder = new Encoder(bw);
+        encoder.update(src, off, len);
+        encoder.finish();
+        return bw.bytesWritten();
+    }
+
+    /**
+     * decode a LZW encoded stream
+     * dictionary entries are (prefix code, last byte, length) in flat arrays,
+     * each word is expanded backward straight into the output buffer
+     * @return decoded size
+     */
+    @Override
+    protected long decode(InputStream ins, OutputStream outs) throws IOException {
+        long start = phaseStart();
+        BitReader br = newBitReader(ins);
+
+        // read dictionary size
+        int maxBits = br.readByte();
+        if (maxBits < MIN_BITS || maxBits > MAX_BITS) {
+            throw new IOException("Corrupted LZW header: max code bits " + maxBits);
+        }
+        int maxCode = 1 << maxBits;
+
+        // entries from an earlier stream are never read: a code is
+        // accepted only below avail, where this stream has set it
+        if (prefixes.length < maxCode) {
+            prefixes = new int[maxCode];
+            suffixes = new byte[maxCode];
+            lengths = new int[maxCode];
+        }
+        int[] prefix = prefixes;
+        byte[] suffix = suffixes;
+        int[] length = lengths;
+        for (int i = 0; i < 256; i++) {
+            suffix[i] = (byte)i;
+            length[i] = 1;
         }
 
-        private int readWord() throws IOException {
-            int encode = 0;
-            if (wordLen%8 == 0) {
-                encode = 0;
-                for (int i = 0; i < wordLen/8; i++) {
-                    crtByte = (byte)ins.read();
-                    encode = encode | ((((int)crtByte)&0xFF)<<(i*8));
+        byte[] out = segment();
+        int pos = 0;
+        long crtSize = 0;
+        int avail = FIRST_CODE;   // next entry to define
+        int prev = -1;
+        int width = MIN_BITS;
+        int nextCode = FIRST_CODE;
+        start = phaseDone(CodecMetrics.Phase.ReadHeader, start);
+
+        while (true) {
+            int header = br.readInt();
+            int type = BlockType.type(header);
+            int remaining = BlockType.size(header);
+            if (remaining == 0 || remaining > SEGMENT_SIZE || type > BlockType.CONSTANT) {
+                if (header != 0) {
+                    throw new IOException("Corrupted LZW segment header: " + header);
                 }
+                break;
             }
-            else {
-                if (index == 0) {
-                    int i = 0;
-                    encode = 0;
-                    for (i = 0; i < wordLen/8; i++) {
-                        crtByte = (byte)ins.read();
-                        encode = encode | ((((int)crtByte)&0xFF)<<(i*8+index));
-                    }
-                    crtByte = (byte)ins.read();
-                    encode = encode | ((((int)crtByte)&0xF)<<(i*8));
-                    index = 4;
+            if (pos + remaining > out.length) {
+                outs.write(out, 0, pos);
+                pos = 0;
+            }
+            crtSize += remaining;
+            if (type == BlockType.CONSTANT) {
+                Arrays.fill(out, pos, pos + remaining, (byte)br.readByte());
+                pos += remaining;
+                continue;
+            }
+            if (type == BlockType.STORED) {
+                br.readBytes(out, pos, remaining);
+                pos += remaining;
+                // the encoder cleared its dictionary
+                avail = FIRST_CODE;
+                prev = -1;
+                width = MIN_BITS;
+                nextCode = FIRST_CODE;
+                continue;
+            }
+
+            while (remaining > 0) {
+                int code = br.readBits(width);
+                if (br.overrun()) {
+                    throw new IOException("Corrupted LZW stream: truncated segment");
+                }
+                if (code == CLEAR) {
+                    avail = FIRST_CODE;
+                    prev = -1;
+                    width = MIN_BITS;
+                    nextCode = FIRST_CODE;
+                    continue;
+                }
+
+                int len;
+                if (code < 256 || (code >= FIRST_CODE && code < avail && length[code] > 0)) {
+                    len = length[code];
+                }
+                else if (code == avail && prev >= 0) {
+                    // word defined by this very code: prev + first byte of prev
+                    len = length[prev] + 1;
                 }
                 else {
-                    encode = (((int)crtByte)>>4)&0xF;
-                    for (int i = 0; i < wordLen/8; i++) {
-                        crtByte = (byte)ins.read();
-                        encode = encode | ((((int)crtByte)&0xFF)<<(i*8+index));
+                    throw new IOException("Corrupted LZW code: " + code);
+                }
+                if (len > remaining) {
+                    throw new IOException("Corrupted LZW stream: word crosses segment end");
+                }
+
+                int p = pos + len;
+                int c = code;
+                if (c == avail) {
+                    p--;
+                    c = prev;
+                }
+                while (c >= 256) {
+                    out[--p] = suffix[c];
+                    c = prefix[c];
+                }
+                out[--p] = (byte)c;
+                if (code == avail) {
+                    out[pos + len - 1] = out[pos];
+                }
+
+                if (prev >= 0 && avail < maxCode) {
+                    // add prev + first byte of this word to dict
+                    prefix[avail] = prev;
+                    suffix[avail] = out[pos];
+                    length[avail] = length[prev] + 1;
+                    avail++;
+                }
+                prev = code;
+                pos += len;
+                remaining -= len;
+
+                // same width schedule as Encoder.emit
+                if (nextCode < maxCode) {
+                    nextCode++;
+                    if (nextCode == (1 << width) && width < maxBits) {
+                        width++;
                     }
-                    index = 0;
                 }
             }
-            return encode;
+            br.alignToByte();
+            // the last word of the segment defines no entry: skip its code
+            if (avail < nextCode) {
+                length[avail] = 0;
+                avail = nextCode;
+            }
+            prev = -1;
         }
+        outs.write(out, 0, pos);
+        phaseDone(CodecMetrics.Phase.Decode, start);
+        return crtSize;
+    }
 
-        public void setWordLen(int wordLen) {
-            this.wordLen = wordLen;
-        }
+    /**
+     * largest encoded size: every segment stored behind its header
+     */
+    @Override
+    protected long maxEncodedLength(long len) {
+        return 1 + len + 4 * ((len + SEGMENT_SIZE - 1) / SEGMENT_SIZE) + 4;
     }
 
-}
\ No newline at end of file
+    private byte[] segment() {
+        if (segment == null) {
+            segment = new byte[SEGMENT_SIZE];
+        }
+        return segment;
+    }
+}
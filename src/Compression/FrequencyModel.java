@@ -0,0 +1,122 @@
+package Compression;
+
+/**
+ * adaptive cumulative frequency model backed by a Fenwick (binary indexed) tree
+ *
+ * cumFreq, findSymbol and update all take O(log n). When the total reaches
+ * the limit every count is halved, which both keeps the total inside the
+ * range coder's precision and lets the model forget old statistics.
+ * @author Hang Yuan
+ */
+class FrequencyModel {
+
+    int numSymbols;
+    int increment;
+    int limit;
+
+    int[] freq;  // count of each symbol
+    int[] tree;  // Fenwick tree, 1-based
+    int topStep; // highest power of 2 <= numSymbols
+    int total;
+
+    /**
+     * constructor
+     * @param numSymbols alphabet size, every symbol starts with count 1
+     * @param increment count added to a symbol each time it is seen
+     * @param limit counts are halved when the total exceeds this
+     */
+    public FrequencyModel(int numSymbols, int increment, int limit) {
+        this.numSymbols = numSymbols;
+        this.increment = increment;
+        this.limit = limit;
+        freq = new int[numSymbols];
+        tree = new int[numSymbols + 1];
+        topStep = Integer.highestOneBit(numSymbols);
+        for (int i = 0; i < numSymbols; i++) {
+            freq[i] = 1;
+        }
+        rebuild();
+    }
+
+    /**
+     * total frequency of all symbols
+     */
+    public int total() {
+        return total;
+    }
+
+    /**
+     * frequency of a symbol
+     */
+    public int freq(int symbol) {
+        return freq[symbol];
+    }
+
+    /**
+     * sum of frequencies of all symbols before the given one
+     */
+    public int cumFreq(int symbol) {
+        int sum = 0;
+        for (int i = symbol; i > 0; i -= (i & -i)) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * find the symbol s with cumFreq(s) <= target < cumFreq(s) + freq(s)
+     */
+    public int findSymbol(int target) {
+        int pos = 0;
+        for (int step = topStep; step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= numSymbols && tree[next] <= target) {
+                pos = next;
+                target -= tree[next];
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * count one more occurrence of a symbol
+     */
+    public void update(int symbol) {
+        freq[symbol] += increment;
+        total += increment;
+        if (total > limit) {
+            rescale();
+            return;
+        }
+        for (int i = symbol + 1; i <= numSymbols; i += (i & -i)) {
+            tree[i] += increment;
+        }
+    }
+
+    /*
+     * halve all counts, keeping every symbol codable
+     */
+    private void rescale() {
+        for (int i = 0; i < numSymbols; i++) {
+            freq[i] = (freq[i] + 1) >> 1;
+        }
+        rebuild();
+    }
+
+    /*
+     * rebuild the tree from freq in O(n)
+     */
+    private void rebuild() {
+        total = 0;
+        for (int i = 1; i <= numSymbols; i++) {
+            tree[i] = freq[i - 1];
+            total += freq[i - 1];
+        }
+        for (int i = 1; i <= numSymbols; i++) {
+            int parent = i + (i & -i);
+            if (parent <= numSymbols) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+}
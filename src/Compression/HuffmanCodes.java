@@ -0,0 +1,298 @@
+package Compression;
+
+import java.util.Arrays;
+import java.io.IOException;
+
+/**
+ * length-limited canonical Huffman code builder
+ *
+ * Code lengths are computed with the in-place Moffat-Katajainen algorithm
+ * over symbols sorted by frequency, then limited to maxLen by moving
+ * leaves up until the Kraft sum fits again. Codes are assigned canonically
+ * from the lengths alone, so only lengths have to be transmitted. All
+ * scratch arrays are allocated once per builder and reused.
+ * @author Hang Yuan
+ */
+class HuffmanCodes {
+
+    /**
+     * longest sparse length list, denser alphabets use a full nibble table
+     */
+    static final int SPARSE_MAX = 84;
+
+    int maxSymbols;
+    int maxLen;
+
+    long[] sorted;  // (freq << 16) | symbol, ascending
+    int[] work;     // Moffat-Katajainen working array
+    int[] blCount;  // number of codes of each length
+    int[] nextCode; // next canonical code of each length
+
+    /**
+     * constructor
+     * @param maxSymbols largest alphabet size
+     * @param maxLen longest allowed code length
+     */
+    public HuffmanCodes(int maxSymbols, int maxLen) {
+        this.maxSymbols = maxSymbols;
+        this.maxLen = maxLen;
+        sorted = new long[maxSymbols];
+        work = new int[maxSymbols];
+        blCount = new int[maxLen + 1];
+        nextCode = new int[maxLen + 2];
+    }
+
+    /**
+     * compute code lengths from symbol frequencies
+     * @param freqs frequency of each symbol
+     * @param numSymbols alphabet size
+     * @param lengths receives code length of each symbol, 0 if unused
+     * @return number of used symbols
+     */
+    public int buildLengths(int[] freqs, int numSymbols, byte[] lengths) {
+        int n = 0;
+        for (int s = 0; s < numSymbols; s++) {
+            lengths[s] = 0;
+            if (freqs[s] > 0) {
+                sorted[n++] = ((long)freqs[s] << 16) | s;
+            }
+        }
+        if (n == 0) {
+            return 0;
+        }
+        if (n == 1) {
+            lengths[(int)(sorted[0] & 0xFFFF)] = 1;
+            return 1;
+        }
+        Arrays.sort(sorted, 0, n);
+
+        for (int i = 0; i < n; i++) {
+            work[i] = (int)(sorted[i] >>> 16);
+        }
+        minimumRedundancy(work, n);
+
+        // work[i] is now the length of the i-th least frequent symbol
+        Arrays.fill(blCount, 0);
+        for (int i = 0; i < n; i++) {
+            blCount[Math.min(work[i], maxLen)]++;
+        }
+        limitLengths();
+        int i = 0;
+        for (int len = maxLen; len > 0; len--) {
+            for (int k = blCount[len]; k > 0; k--) {
+                lengths[(int)(sorted[i++] & 0xFFFF)] = (byte)len;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * assign canonical codes, bit reversed so the first bit is bit 0
+     * @param lengths code length of each symbol
+     * @param numSymbols alphabet size
+     * @param codes receives code of each symbol
+     */
+    public void assignCodes(byte[] lengths, int numSymbols, int[] codes) {
+        Arrays.fill(blCount, 0);
+        for (int s = 0; s < numSymbols; s++) {
+            blCount[lengths[s]]++;
+        }
+        blCount[0] = 0;
+        int code = 0;
+        for (int len = 1; len <= maxLen; len++) {
+            code = (code + blCount[len - 1]) << 1;
+            nextCode[len] = code;
+        }
+        for (int s = 0; s < numSymbols; s++) {
+            int len = lengths[s];
+            codes[s] = len == 0 ? 0 : Integer.reverse(nextCode[len]++) >>> (32 - len);
+        }
+    }
+
+    /**
+     * write code lengths
+     * | n (1..SPARSE_MAX) | n symbols | n lengths, 2 per byte |
+     * | 0                 | all lengths, 2 per byte            |
+     * the dense form also covers empty codes and alphabets over 256 symbols
+     * @return bytes written
+     */
+    public static int writeLengths(byte[] lengths, int numSymbols, BitWriter bw)
+                throws IOException
+    {
+        int n = 0;
+        for (int s = 0; s < numSymbols; s++) {
+            if (lengths[s] > 0) {
+                n++;
+            }
+        }
+        int written = 1;
+        if (n > 0 && n <= SPARSE_MAX && numSymbols <= 256) {
+            bw.writeByte(n);
+            for (int s = 0; s < numSymbols; s++) {
+                if (lengths[s] > 0) {
+                    bw.writeByte(s);
+                }
+            }
+            int half = -1;
+            for (int s = 0; s < numSymbols; s++) {
+                if (lengths[s] > 0) {
+                    if (half < 0) {
+                        half = lengths[s];
+                    }
+                    else {
+                        bw.writeByte(half | (lengths[s] << 4));
+                        half = -1;
+                    }
+                }
+            }
+            if (half >= 0) {
+                bw.writeByte(half);
+            }
+            written += n + (n + 1) / 2;
+        }
+        else {
+            bw.writeByte(0);
+            for (int s = 0; s < numSymbols; s += 2) {
+                int high = s + 1 < numSymbols ? lengths[s + 1] : 0;
+                bw.writeByte(lengths[s] | (high << 4));
+            }
+            written += (numSymbols + 1) / 2;
+        }
+        return written;
+    }
+
+    /**
+     * bytes writeLengths takes for the given lengths
+     */
+    public static int lengthsSize(byte[] lengths, int numSymbols) {
+        int n = 0;
+        for (int s = 0; s < numSymbols; s++) {
+            if (lengths[s] > 0) {
+                n++;
+            }
+        }
+        if (n > 0 && n <= SPARSE_MAX && numSymbols <= 256) {
+            return 1 + n + (n + 1) / 2;
+        }
+        return 1 + (numSymbols + 1) / 2;
+    }
+
+    /**
+     * read code lengths written by writeLengths, rejecting symbols outside
+     * the alphabet and over-subscribed lengths, which no code can have
+     */
+    public static void readLengths(byte[] lengths, int numSymbols, BitReader br)
+                throws IOException
+    {
+        Arrays.fill(lengths, 0, numSymbols, (byte)0);
+        int n = br.readByte();
+        if (n > 0) {
+            int[] symbols = new int[n];
+            for (int i = 0; i < n; i++) {
+                symbols[i] = br.readByte();
+                if (symbols[i] >= numSymbols) {
+                    throw new IOException("corrupt Huffman lengths: symbol " + symbols[i] +
+                                          " of " + numSymbols);
+                }
+            }
+            for (int i = 0; i < n; i += 2) {
+                int b = br.readByte();
+                lengths[symbols[i]] = (byte)(b & 0xF);
+                if (i + 1 < n) {
+                    lengths[symbols[i + 1]] = (byte)((b >> 4) & 0xF);
+                }
+            }
+        }
+        else {
+            for (int s = 0; s < numSymbols; s += 2) {
+                int b = br.readByte();
+                lengths[s] = (byte)(b & 0xF);
+                if (s + 1 < numSymbols) {
+                    lengths[s + 1] = (byte)((b >> 4) & 0xF);
+                }
+            }
+        }
+
+        // Kraft sum in units of 2^-15, lengths are at most 15
+        int kraft = 0;
+        for (int s = 0; s < numSymbols; s++) {
+            if (lengths[s] > 0) {
+                kraft += 1 << (15 - lengths[s]);
+            }
+        }
+        if (kraft > 1 << 15) {
+            throw new IOException("corrupt Huffman lengths: over-subscribed code");
+        }
+    }
+
+    /*
+     * Moffat-Katajainen: turn ascending frequencies a[0..n-1] into
+     * code lengths in place, a[0] gets the longest
+     */
+    private static void minimumRedundancy(int[] a, int n) {
+        // phase 1: build tree, parent pointers overwrite internal weights
+        a[0] += a[1];
+        int root = 0, leaf = 2;
+        for (int next = 1; next < n - 1; next++) {
+            if (leaf >= n || a[root] < a[leaf]) {
+                a[next] = a[root];
+                a[root++] = next;
+            }
+            else {
+                a[next] = a[leaf++];
+            }
+            if (leaf >= n || (root < next && a[root] < a[leaf])) {
+                a[next] += a[root];
+                a[root++] = next;
+            }
+            else {
+                a[next] += a[leaf++];
+            }
+        }
+
+        // phase 2: internal node depths
+        a[n - 2] = 0;
+        for (int next = n - 3; next >= 0; next--) {
+            a[next] = a[a[next]] + 1;
+        }
+
+        // phase 3: leaf depths
+        int avail = 1, used = 0, depth = 0;
+        root = n - 2;
+        int next = n - 1;
+        while (avail > 0) {
+            while (root >= 0 && a[root] == depth) {
+                used++;
+                root--;
+            }
+            while (avail > used) {
+                a[next--] = depth;
+                avail--;
+            }
+            avail = 2 * used;
+            depth++;
+            used = 0;
+        }
+    }
+
+    /*
+     * move leaves up until the clamped length counts satisfy Kraft again
+     */
+    private void limitLengths() {
+        long total = 0;
+        for (int len = maxLen; len > 0; len--) {
+            total += ((long)blCount[len]) << (maxLen - len);
+        }
+        while (total > (1L << maxLen)) {
+            blCount[maxLen]--;
+            for (int len = maxLen - 1; len > 0; len--) {
+                if (blCount[len] > 0) {
+                    blCount[len]--;
+                    blCount[len + 1] += 2;
+                    break;
+                }
+            }
+            total--;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package Compression;
+
+import java.util.Arrays;
+
+/**
+ * Huffman decoding lookup table
+ *
+ * Codes are read LSB first: the first bit of a code is bit 0 of the bit
+ * buffer. The low PRIMARY_BITS bits of the buffer index the primary table,
+ * whose entry gives symbol and code length directly. Codes longer than
+ * PRIMARY_BITS share a primary entry per prefix that points to a secondary
+ * table indexed by the following bits.
+ *
+ * entry layout: | symbol or subtable offset | subtable flag | length |
+ *               |        bits 8 - 31        |     bit 5     | 0 - 4  |
+ * @author Hang Yuan
+ */
+class HuffmanTable {
+
+    public static final int PRIMARY_BITS = 11;
+
+    /**
+     * longest code this table can resolve
+     */
+    public static final int MAX_CODE_LEN = 24;
+
+    static final int PRIMARY_MASK = (1 << PRIMARY_BITS) - 1;
+    static final int SUB_FLAG = 0x20;
+    static final int LEN_MASK = 0x1F;
+
+    int[] primary = new int[1 << PRIMARY_BITS];
+    int[] secondary = new int[0];
+    int[] subBits = new int[1 << PRIMARY_BITS];
+    int maxLen = 0;
+
+    /**
+     * build the table
+     * @param codes code of each symbol, first bit in bit 0
+     * @param lengths code length of each symbol, 0 if unused
+     * @param numSymbols alphabet size
+     */
+    public HuffmanTable(int[] codes, byte[] lengths, int numSymbols) {
+        build(codes, lengths, numSymbols);
+    }
+
+    /**
+     * rebuild the table for other codes, reusing its arrays; the lengths
+     * must satisfy the Kraft inequality, HuffmanCodes.readLengths checks
+     * lengths read from a stream
+     */
+    public void build(int[] codes, byte[] lengths, int numSymbols) {
+        Arrays.fill(primary, 0);
+        Arrays.fill(subBits, 0);
+        maxLen = 0;
+        for (int s = 0; s < numSymbols; s++) {
+            maxLen = Math.max(maxLen, lengths[s]);
+        }
+        if (maxLen > MAX_CODE_LEN) {
+            throw new IllegalArgumentException("code length " + maxLen + " exceeds " + MAX_CODE_LEN);
+        }
+
+        // width of the secondary table under each long-code prefix
+        for (int s = 0; s < numSymbols; s++) {
+            int len = lengths[s];
+            if (len > PRIMARY_BITS) {
+                int prefix = codes[s] & PRIMARY_MASK;
+                subBits[prefix] = Math.max(subBits[prefix], len - PRIMARY_BITS);
+            }
+        }
+        int subSize = 0;
+        for (int p = 0; p <= PRIMARY_MASK; p++) {
+            if (subBits[p] > 0) {
+                primary[p] = (subSize << 8) | SUB_FLAG | subBits[p];
+                subSize += 1 << subBits[p];
+            }
+        }
+        if (secondary.length < subSize) {
+            secondary = new int[subSize];
+        }
+        else {
+            Arrays.fill(secondary, 0, subSize, 0);
+        }
+
+        // fill every slot whose low bits match a code
+        for (int s = 0; s < numSymbols; s++) {
+            int len = lengths[s];
+            if (len == 0) {
+                continue;
+            }
+            int entry = (s << 8) | len;
+            if (len <= PRIMARY_BITS) {
+                for (int i = codes[s]; i <= PRIMARY_MASK; i += (1 << len)) {
+                    primary[i] = entry;
+                }
+            }
+            else {
+                int sub = primary[codes[s] & PRIMARY_MASK];
+                int offset = sub >>> 8, bits = sub & LEN_MASK;
+                for (int i = codes[s] >>> PRIMARY_BITS; i < (1 << bits); i += (1 << (len - PRIMARY_BITS))) {
+                    secondary[offset + i] = entry;
+                }
+            }
+        }
+    }
+
+    /**
+     * look up the code at the bottom of the bit buffer, at least
+     * maxLen bits must be valid
+     * @return (symbol << 8) | code length
+     */
+    public int lookup(long bitBuf) {
+        int entry = primary[(int)bitBuf & PRIMARY_MASK];
+        if ((entry & SUB_FLAG) != 0) {
+            int index = (int)(bitBuf >>> PRIMARY_BITS) & ((1 << (entry & LEN_MASK)) - 1);
+            entry = secondary[(entry >>> 8) + index];
+        }
+        return entry;
+    }
+
+    /**
+     * longest code length in this table
+     */
+    public int maxLen() {
+        return maxLen;
+    }
+}
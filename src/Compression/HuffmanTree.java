@@ -1,17 +1,9 @@
 package Compression;
 
-import java.io.Serializable;
-import java.util.PriorityQueue;
-import java.util.Stack;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.io.IOException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.nio.ByteBuffer;
+import java.io.InputStream;
+import java.io.OutputStream;
 import Compression.AbstractCompressor;
 
 /**
@@ -20,283 +12,270 @@ import Compression.AbstractCompressor;
  */
 public class HuffmanTree extends AbstractCompressor {
 
-    /*
-     * Huffman Tree Node
-     */   
-    class TreeNode implements Comparable {
-        byte b;
-        TreeNode left = null;
-        TreeNode right = null;
-        int count;
-        ArrayList<Byte> encode = null;
+    /**
+     * longest code length, keeps every code inside the primary and
+     * secondary decoding tables
+     */
+    public static final int MAX_CODE_LEN = 15;
 
-        public TreeNode(byte b, int count) {
-            this.b = b;
-            this.count = count;
-        }
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 17;
+    public static final int MIN_BLOCK_SIZE = 1 << 10;
+    public static final int MAX_BLOCK_SIZE = 1 << 24;
 
-        @Override
-        public int compareTo(Object other){
-            return this.count - ((TreeNode)other).count;
-        }
-    }
+    int blockSize = DEFAULT_BLOCK_SIZE;
 
-    TreeNode root = null;
-    int nodeNum = 0;
+    // kept from one operation to the next
+    BlockEncoder encoder = null;
+    BlockDecoder decoder = null;
+    byte[] block = new byte[0];
 
     /**
-     * constructor
-     * @param fileName file to be compressed
+     * per-stream encoding state, reused for every block
      */
-    public HuffmanTree(String pathName) {
-        super(pathName, "huf");
-    }
+    class BlockEncoder {
+        int[] counts = new int[256];
+        byte[] lengths = new byte[256];
+        int[] codes = new int[256];
+        HuffmanCodes builder = new HuffmanCodes(256, MAX_CODE_LEN);
 
-    /**
-     * compressFile
-     * | original size | treeNode num | tree nodes  | data  |
-     * |   8 bytes     |    4bytes    |  {b, cnt}   | ..... |
-     * @return decoded bit size
-     */
-    @Override
-    public long compress() {
-        if (mode() != AbstractCompressor.Mode.Compress) {
-            System.err.println("Error: Not in Compress mode");
-            return 0;
-        }
-        
-        // create huffman tree
-        createHuffmanTree();
+        /**
+         * encode one block with its own canonical codes
+         * | block header | code lengths | data, padded to a byte |
+         * |   4 bytes    |  see below   |        .....           |
+         * code lengths are written by HuffmanCodes.writeLengths; a block
+         * of one repeated byte is written as that byte, a block the codes
+         * would not shrink is stored, see BlockType
+         */
+        public void encode(byte[] src, int off, int len, BitWriter bw) throws IOException {
+            long start = phaseStart();
+            if (BlockType.isConstant(src, off, len)) {
+                bw.writeInt(BlockType.header(BlockType.CONSTANT, len));
+                bw.writeByte(src[off]);
+                phaseDone(CodecMetrics.Phase.Encode, start);
+                return;
+            }
 
-        // begin compressing
-        System.out.println("Start Compressing ...");
-        try {
-            BufferedOutputStream outs = 
-                new BufferedOutputStream(new FileOutputStream(zipFileName));
+            // count number of each byte and build canonical codes
+            Arrays.fill(counts, 0);
+            for (int i = off; i < off + len; i++) {
+                counts[(int)(src[i]&0x0FF)]++;
+            }
+            start = phaseDone(CodecMetrics.Phase.Histogram, start);
+            builder.buildLengths(counts, 256, lengths);
+            builder.assignCodes(lengths, 256, codes);
+            start = phaseDone(CodecMetrics.Phase.BuildModel, start);
 
-            // write original file size
-            ByteBuffer bBuf = ByteBuffer.allocate(8);
-            bBuf.putLong(fileSize);
-            outs.write(bBuf.array(), 0, 8);
-            
-            // write number of treeNodes
-            bBuf = ByteBuffer.allocate(4);
-            bBuf.putInt(nodeNum);
-            outs.write(bBuf.array(), 0, 4);
-            
-            compressedSize = 12;
+            if (codedSize() >= len) {
+                bw.writeInt(BlockType.header(BlockType.STORED, len));
+                bw.writeBytes(src, off, len);
+                phaseDone(CodecMetrics.Phase.Encode, start);
+                return;
+            }
+            bw.writeInt(BlockType.header(BlockType.CODED, len));
+            HuffmanCodes.writeLengths(lengths, 256, bw);
+            start = phaseDone(CodecMetrics.Phase.WriteHeader, start);
+            bw.writeSymbols(src, off, len, codes, lengths);
+            bw.alignToByte();
+            phaseDone(CodecMetrics.Phase.Encode, start);
+        }
 
-            // traverse the huffman tree and write treeNodes to .huf file
-            HashMap<Byte, TreeNode> map = new HashMap<Byte, TreeNode>();
-            Stack<TreeNode> stack = new Stack<TreeNode>();
-            stack.push(root);
-            root.encode = new ArrayList<Byte>();
-            while (!stack.isEmpty()) {
-                TreeNode node = stack.pop();
-                // write leave node to .huf file
-                if (node.left == null && node.right == null) {
-                    bBuf = ByteBuffer.allocate(5);
-                    bBuf.put(node.b);
-                    bBuf.putInt(1, node.count);
-                    outs.write(bBuf.array(), 0, 5);
-                    // add this leave to HashMap
-                    map.put(node.b, node);
-                    compressedSize += 5;
-                }
-                // push left and right child
-                if (node.right != null) {
-                    node.right.encode = new ArrayList<Byte>();
-                    node.right.encode.addAll(node.encode);
-                    node.right.encode.add((byte)1);
-                    stack.push(node.right);
-                }
-                if (node.left != null) {
-                    node.left.encode = new ArrayList<Byte>();
-                    node.left.encode.addAll(node.encode);
-                    node.left.encode.add((byte)0);
-                    stack.push(node.left);
-                }
+        /**
+         * bytes of code lengths and data the current codes take
+         */
+        private long codedSize() {
+            long bits = 0;
+            for (int s = 0; s < 256; s++) {
+                bits += (long)counts[s] * lengths[s];
             }
+            return HuffmanCodes.lengthsSize(lengths, 256) + (bits + 7) / 8;
+        }
+    }
 
-            // start encoding
-            BufferedInputStream ins = 
-                new BufferedInputStream(new FileInputStream(fileName));
+    /**
+     * per-stream decoding state, reused for every block
+     */
+    class BlockDecoder {
+        byte[] lengths = new byte[256];
+        int[] codes = new int[256];
+        HuffmanCodes builder = new HuffmanCodes(256, MAX_CODE_LEN);
+        HuffmanTable table = null;
+        byte[] outBuf = new byte[0];
 
-            byte crt = 0; // byte buf
-            int byteIndex = 0;
-            for (int i = 0; i < fileSize; i++) {
-                byte b = (byte)ins.read();
-                TreeNode node = map.get(b);
-                for (byte c: node.encode) {
-                    //System.out.println(c);
-                    crt = (byte)(crt|(c<<byteIndex));
-                    byteIndex++;
-                    if (byteIndex == 8) {
-                        // write this byte to .huf file and reset byte buf
-                        outs.write(crt);
-                        crt = 0;
-                        byteIndex = 0;
-                        compressedSize++;
-                    }
+        /**
+         * decode one block into outBuf
+         * @return decoded size, 0 at end of stream
+         */
+        public int decode(BitReader br) throws IOException {
+            long start = phaseStart();
+            int header = br.readInt();
+            int type = BlockType.type(header);
+            int size = BlockType.size(header);
+            if (size == 0 || size > MAX_BLOCK_SIZE || type > BlockType.CONSTANT) {
+                if (header != 0) {
+                    throw new IOException("Corrupted huffman block header: " + header);
                 }
+                return 0;
+            }
+            if (outBuf.length < size) {
+                outBuf = new byte[size];
             }
-            if (byteIndex < 8) {
-                outs.write(crt);
-                compressedSize++;
+            if (type == BlockType.STORED) {
+                br.readBytes(outBuf, 0, size);
+                phaseDone(CodecMetrics.Phase.Decode, start);
+                return size;
+            }
+            if (type == BlockType.CONSTANT) {
+                Arrays.fill(outBuf, 0, size, (byte)br.readByte());
+                phaseDone(CodecMetrics.Phase.Decode, start);
+                return size;
             }
 
-            ins.close();
-            outs.close();
-        }
-        catch (IOException e) {
-           e.printStackTrace();
-        }
+            // read code lengths and rebuild the canonical codes
+            HuffmanCodes.readLengths(lengths, 256, br);
+            builder.assignCodes(lengths, 256, codes);
+            if (table == null) {
+                table = new HuffmanTable(codes, lengths, 256);
+            }
+            else {
+                table.build(codes, lengths, 256);
+            }
+            start = phaseDone(CodecMetrics.Phase.ReadHeader, start);
 
-        // go to decompress mode
-        setDecompressMode();
-        setCompressRate(((double)compressedSize) / fileSize);
-        System.out.println("Done: Compression Rate = " + 
-                           String.format("%.2f", getCompressRate()*100) + "%\n");
-        return compressedSize;
+            for (int i = 0; i < size; i++) {
+                if (br.bitCount < MAX_CODE_LEN) {
+                    br.refill();
+                }
+                // resolve next symbol with a single table lookup
+                int entry = table.lookup(br.bitBuf);
+                br.consume(entry & HuffmanTable.LEN_MASK);
+                outBuf[i] = (byte)(entry >>> 8);
+            }
+            br.alignToByte();
+            phaseDone(CodecMetrics.Phase.Decode, start);
+            return size;
+        }
     }
 
     /**
-     * decompress File
-     * @return decompressed file size
+     * constructor
+     * @param fileName file to be compressed
      */
-    @Override
-    public long decompress() {
-        // check file ending with ".huf"
-        if (mode() != AbstractCompressor.Mode.Decompress) {
-            System.err.println("Error: Not in Decompress mode");
-            return 0;
-        }
+    public HuffmanTree(String pathName) {
+        super(pathName, "huf");
+    }
 
-        try {
-            System.out.println("Start Decompressing ...");
-            BufferedInputStream ins = 
-                new BufferedInputStream(new FileInputStream(zipFileName));
+    /**
+     * constructor for stream compressing
+     */
+    public HuffmanTree() {
+        super();
+    }
 
-            // read original file size
-            byte[] barray = new byte[8];
-            ins.read(barray, 0, 8);
-            fileSize = ByteBuffer.wrap(barray).getLong();
-            File file = new File(zipFileName);
-            setCompressRate(((double)file.length()) / fileSize);
-            
-            // read number of treeNodes
-            barray = new byte[4];
-            ins.read(barray, 0, 4);
-            nodeNum = ByteBuffer.wrap(barray).getInt();
-            
-            // read leave nodes and recover the huffman tree
-            int[] counts = new int[256];
-            for (int i = 0; i < nodeNum; i++) {
-                byte b = (byte)ins.read();
-                ins.read(barray, 0, 4);
-                int cnt = ByteBuffer.wrap(barray).getInt();
-                counts[(int)(b&0x0FF)] = cnt;
-            }
-            this.root = buildTree(counts); // build tree
-            
-            // start decoding
-            BufferedOutputStream outs = 
-                new BufferedOutputStream(new FileOutputStream(fileName + ".out"));
+    /**
+     * set the number of input bytes coded with one table
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("block size out of range: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
 
-            int crtSize = 0, index = 0;
-            byte crtByte = (byte)ins.read();
-            TreeNode tracer = root;
-            while (crtSize < fileSize) {
-                // trace from root to decode next byte
-                while (tracer.left != null || tracer.right != null) {
-                    if ((crtByte & (0x1<<index)) == 0) {
-                        tracer = tracer.left;
-                    }
-                    else {
-                        tracer = tracer.right;
-                    }
-                    index++;
-                    if (index == 8) {
-                        crtByte = (byte)ins.read();
-                        index = 0;
-                    }
-                }
-                // write a original byte
-                outs.write(tracer.b);
-                tracer = root;
-                crtSize++;
-            }
+    public int getBlockSize() {
+        return blockSize;
+    }
 
-            ins.close();
-            outs.close();
+    /**
+     * compress a stream in a single pass, one block at a time
+     * | block | block | ... | 0 (4 bytes) |
+     * @return compressed size
+     */
+    @Override
+    protected long compressStream(InputStream ins, OutputStream outs) throws IOException {
+        BitWriter bw = newBitWriter(outs);
+        BlockEncoder encoder = encoder();
+        if (block.length != blockSize) {
+            block = new byte[blockSize];
         }
-        catch (IOException e) {
-           e.printStackTrace();
+        int n;
+        while ((n = readBlock(ins, block)) > 0) {
+            encoder.encode(block, 0, n, bw);
         }
-
-        System.out.println("Done: Decompressed File Size = " + fileSize + " bytes");
-        return fileSize;
+        long start = phaseStart();
+        bw.writeInt(0);
+        bw.flush();
+        phaseDone(CodecMetrics.Phase.Flush, start);
+        return bw.bytesWritten();
     }
 
-
     /**
-     * build huffman tree
-     * @param counts count array of all bytes
-     * @return tree root
+     * encode bytes, one block at a time
+     * | block | block | ... | 0 (4 bytes) |
+     * @return encoded size
      */
-    public TreeNode buildTree(int[] counts) {
-        // create tree nodes and put them in a min heap
-        PriorityQueue<TreeNode> heap = new PriorityQueue<TreeNode>();
-        for (int i = 0; i < 256; i++) {
-            if (counts[i] > 0) {
-                TreeNode node = new TreeNode((byte)(i&0xFF), counts[i]);
-                heap.add(node);
-            }
+    @Override
+    protected long encode(byte[] src, int off, int len, OutputStream outs)
+                throws IOException
+    {
+        BitWriter bw = newBitWriter(outs);
+        BlockEncoder encoder = encoder();
+        for (int pos = off; pos < off + len; pos += blockSize) {
+            encoder.encode(src, pos, Math.min(blockSize, off + len - pos), bw);
         }
-        nodeNum = heap.size();
+        long start = phaseStart();
+        bw.writeInt(0);
+        bw.flush();
+        phaseDone(CodecMetrics.Phase.Flush, start);
+        return bw.bytesWritten();
+    }
 
-        if (nodeNum == 1) { // edge case
-            TreeNode node1 = heap.poll();
-            TreeNode node2 = new TreeNode((byte)0, 0);
-            TreeNode newNode = new TreeNode((byte)0, node1.count + node2.count);
-            newNode.left = node1;
-            newNode.right = node2;
-            heap.add(newNode);
+    /**
+     * decode a huffman encoded stream
+     * @return decoded size
+     */
+    @Override
+    protected long decode(InputStream ins, OutputStream outs) throws IOException {
+        BitReader br = newBitReader(ins);
+        if (decoder == null) {
+            decoder = new BlockDecoder();
         }
-        for (int i = 0; i < nodeNum - 1; i++) {
-            TreeNode node1 = heap.poll();
-            TreeNode node2 = heap.poll();
-            TreeNode newNode = new TreeNode((byte)0, node1.count + node2.count);
-            newNode.left = node1;
-            newNode.right = node2;
-            heap.add(newNode);
+        long size = 0;
+        int n;
+        while ((n = decoder.decode(br)) > 0) {
+            outs.write(decoder.outBuf, 0, n);
+            size += n;
         }
-        return heap.poll(); // final node is root
+        return size;
     }
 
-
     /**
-     * create Huffman Tree
+     * largest encoded size: every block stored behind its header
      */
-    private void createHuffmanTree() {
-        try {
-            BufferedInputStream ins = 
-                new BufferedInputStream(new FileInputStream(fileName));
+    @Override
+    protected long maxEncodedLength(long len) {
+        return len + 4 * ((len + blockSize - 1) / blockSize) + 4;
+    }
 
-            // build Huffman tree
-            // count number of each byte
-            int[] counts = new int[256];
-            for (int i = 0; i < fileSize; i++) {
-                byte b = (byte)ins.read();
-                counts[(int)(b&0x0FF)]++;
-            }
-            this.root = buildTree(counts);
-            
-            ins.close();
-        }
-        catch (IOException e) {
-           e.printStackTrace();
+    private BlockEncoder encoder() {
+        if (encoder == null) {
+            encoder = new BlockEncoder();
         }
+        return encoder;
     }
 
-}
\ No newline at end of file
+    /**
+     * fill a block from the stream
+     * @return bytes read, less than the block only at end of stream
+     */
+    static int readBlock(InputStream ins, byte[] block) throws IOException {
+        int n = 0;
+        while (n < block.length) {
+            int r = ins.read(block, n, block.length - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,607 @@
+package Compression;
+
+import java.util.Arrays;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import Compression.AbstractCompressor;
+
+/**
+ * deflate style compressing: a LZ77 match stage produces literals and
+ * (length, distance) pairs, an entropy stage codes each block of them with
+ * its own canonical Huffman codes for the literal/length and the distance
+ * alphabets. Lengths and distances are a code plus extra bits as in deflate.
+ * @author Hang Yuan
+ */
+public class LZHuffman extends AbstractCompressor {
+
+    static final int MIN_MATCH = MatchFinder.MIN_MATCH;
+    static final int MAX_MATCH = 258;
+    static final int WINDOW_BITS = 15;
+
+    /**
+     * literal/length alphabet: 256 bytes, 256 unused, 29 length codes
+     */
+    static final int NUM_LITLEN = 286;
+    static final int NUM_DIST = 30;
+    static final int MAX_CODE_LEN = 15;
+
+    static final int[] LEN_BASE = {
+        3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+        35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258
+    };
+    static final int[] LEN_EXTRA = {
+        0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+        3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+    };
+    static final int[] DIST_BASE = {
+        1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+        257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577
+    };
+    static final int[] DIST_EXTRA = {
+        0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+        7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+    };
+
+    /**
+     * length code of each match length
+     */
+    static final byte[] LEN_CODE = new byte[MAX_MATCH + 1];
+
+    static {
+        for (int c = 0; c < LEN_BASE.length - 1; c++) {
+            for (int len = LEN_BASE[c]; len < LEN_BASE[c] + (1 << LEN_EXTRA[c]); len++) {
+                LEN_CODE[len] = (byte)c;
+            }
+        }
+        LEN_CODE[MAX_MATCH] = (byte)(LEN_BASE.length - 1);
+    }
+
+    public static final int DEFAULT_CHAIN_DEPTH = 32;
+
+    /**
+     * stop searching once a match is this long, and do not look for a
+     * better match at the next byte after one this long
+     */
+    static final int NICE_LENGTH = 128;
+    static final int LAZY_LENGTH = 32;
+
+    /**
+     * a shortest match further back than this costs more than 3 literals
+     */
+    static final int TOO_FAR = 4096;
+
+    /**
+     * a block ends at BLOCK_TOKENS tokens or MAX_BLOCK_SIZE input bytes,
+     * whichever comes first, the encoder keeps a block's input to store
+     * it when coding would not shrink it
+     */
+    static final int BLOCK_TOKENS = 1 << 15;
+    static final int MAX_BLOCK_SIZE = 1 << 18;
+
+    /**
+     * a run of one byte this long at the start of a block is a constant
+     * block of its own, taken without searching it for matches
+     */
+    static final int MIN_CONSTANT = 1 << 12;
+    static final int BUF_SIZE = 1 << 16;
+
+    int chainDepth = DEFAULT_CHAIN_DEPTH;
+
+    // kept from one operation to the next
+    MatchFinder finder = null;
+    BlockEncoder blockEncoder = null;
+    HuffmanTable litTable = null;
+    HuffmanTable distTable = null;
+    byte[] buffer = null;
+
+    /**
+     * distance code of a match distance, 1 <= dist <= 32768
+     */
+    static int distCode(int dist) {
+        int d = dist - 1;
+        if (d < 4) {
+            return d;
+        }
+        int bits = 31 - Integer.numberOfLeadingZeros(d);
+        return 2 * bits + ((d >>> (bits - 1)) & 1);
+    }
+
+    /**
+     * entropy stage: collects the tokens of one block and codes them
+     * | block header | lit/len code lengths | dist code lengths | codes |
+     * |   4 bytes    |   see HuffmanCodes.writeLengths          | ..... |
+     * or stores the block when that is not larger, see BlockType
+     * | block header | block bytes |
+     * and a block of one repeated byte is that byte
+     * | block header | byte |
+     */
+    class BlockEncoder {
+        int[] tokens = new int[BLOCK_TOKENS];  // byte, or (length << 16) | distance
+        int count = 0;
+        byte[] raw = new byte[MAX_BLOCK_SIZE];
+        int rawLen = 0;
+
+        int[] litFreqs = new int[NUM_LITLEN];
+        int[] distFreqs = new int[NUM_DIST];
+        byte[] litLengths = new byte[NUM_LITLEN];
+        byte[] distLengths = new byte[NUM_DIST];
+        int[] litCodes = new int[NUM_LITLEN];
+        int[] distCodes = new int[NUM_DIST];
+        HuffmanCodes litBuilder = new HuffmanCodes(NUM_LITLEN, MAX_CODE_LEN);
+        HuffmanCodes distBuilder = new HuffmanCodes(NUM_DIST, MAX_CODE_LEN);
+
+        BitWriter bw;
+        long mark;      // start of the match search running into this block
+
+        public BlockEncoder(BitWriter bw) {
+            this.bw = bw;
+        }
+
+        public void literal(int b) throws IOException {
+            tokens[count++] = b;
+            litFreqs[b]++;
+            raw[rawLen++] = (byte)b;
+            if (count == BLOCK_TOKENS || rawLen > MAX_BLOCK_SIZE - MAX_MATCH) {
+                flush();
+            }
+        }
+
+        /**
+         * add a match, buf[pos, pos + len) being the bytes it covers
+         */
+        public void match(int len, int dist, byte[] buf, int pos) throws IOException {
+            tokens[count++] = (len << 16) | dist;
+            litFreqs[257 + LEN_CODE[len]]++;
+            distFreqs[distCode(dist)]++;
+            System.arraycopy(buf, pos, raw, rawLen, len);
+            rawLen += len;
+            if (count == BLOCK_TOKENS || rawLen > MAX_BLOCK_SIZE - MAX_MATCH) {
+                flush();
+            }
+        }
+
+        /**
+         * code len copies of b as a block, no tokens may be collected
+         */
+        public void constant(int b, int len) throws IOException {
+            long start = phaseDone(CodecMetrics.Phase.Match, mark);
+            bw.writeInt(BlockType.header(BlockType.CONSTANT, len));
+            bw.writeBits(b, 8);
+            mark = phaseDone(CodecMetrics.Phase.Encode, start);
+        }
+
+        /**
+         * code the collected tokens as one block
+         */
+        public void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            if (BlockType.isConstant(raw, 0, rawLen)) {
+                int len = rawLen;
+                reset();
+                constant(raw[0] & 0xFF, len);
+                return;
+            }
+            long start = phaseDone(CodecMetrics.Phase.Match, mark);
+            litBuilder.buildLengths(litFreqs, NUM_LITLEN, litLengths);
+            litBuilder.assignCodes(litLengths, NUM_LITLEN, litCodes);
+            distBuilder.buildLengths(distFreqs, NUM_DIST, distLengths);
+            distBuilder.assignCodes(distLengths, NUM_DIST, distCodes);
+            start = phaseDone(CodecMetrics.Phase.BuildModel, start);
+
+            if (codedSize() >= rawLen) {
+                bw.writeInt(BlockType.header(BlockType.STORED, rawLen));
+                bw.writeBytes(raw, 0, rawLen);
+                reset();
+                mark = phaseDone(CodecMetrics.Phase.Encode, start);
+                return;
+            }
+            bw.writeInt(BlockType.header(BlockType.CODED, rawLen));
+            HuffmanCodes.writeLengths(litLengths, NUM_LITLEN, bw);
+            HuffmanCodes.writeLengths(distLengths, NUM_DIST, bw);
+            start = phaseDone(CodecMetrics.Phase.WriteHeader, start);
+            for (int i = 0; i < count; i++) {
+                int t = tokens[i];
+                if (t < 256) {
+                    bw.writeBits(litCodes[t], litLengths[t]);
+                    continue;
+                }
+                int len = t >>> 16;
+                int dist = t & 0xFFFF;
+                int c = LEN_CODE[len];
+                bw.writeBits(litCodes[257 + c], litLengths[257 + c]);
+                if (LEN_EXTRA[c] > 0) {
+                    bw.writeBits(len - LEN_BASE[c], LEN_EXTRA[c]);
+                }
+                c = distCode(dist);
+                bw.writeBits(distCodes[c], distLengths[c]);
+                if (DIST_EXTRA[c] > 0) {
+                    bw.writeBits(dist - DIST_BASE[c], DIST_EXTRA[c]);
+                }
+            }
+
+            reset();
+            mark = phaseDone(CodecMetrics.Phase.Encode, start);
+        }
+
+        /**
+         * bytes the block takes coded with the current codes
+         */
+        private long codedSize() {
+            long bits = 0;
+            for (int s = 0; s < NUM_LITLEN; s++) {
+                bits += (long)litFreqs[s] * litLengths[s];
+            }
+            for (int c = 0; c < LEN_EXTRA.length; c++) {
+                bits += (long)litFreqs[257 + c] * LEN_EXTRA[c];
+            }
+            for (int c = 0; c < NUM_DIST; c++) {
+                bits += (long)distFreqs[c] * (distLengths[c] + DIST_EXTRA[c]);
+            }
+            return HuffmanCodes.lengthsSize(litLengths, NUM_LITLEN)
+                   + HuffmanCodes.lengthsSize(distLengths, NUM_DIST) + (bits + 7) / 8;
+        }
+
+        private void reset() {
+            Arrays.fill(litFreqs, 0);
+            Arrays.fill(distFreqs, 0);
+            count = 0;
+            rawLen = 0;
+        }
+    }
+
+    /**
+     * match stage: greedy search with one step of lazy evaluation, the
+     * match found at a byte is kept only if the next byte has no longer one
+     */
+    class Encoder {
+        MatchFinder finder = matchFinder();
+        BlockEncoder block;
+
+        // match starting at the byte before pos, not emitted yet
+        boolean pending = false;
+        int prevLen = 0;
+        int prevDist = 0;
+
+        public Encoder(BitWriter bw) {
+            if (blockEncoder == null) {
+                blockEncoder = new BlockEncoder(bw);
+            }
+            else {
+                blockEncoder.bw = bw;
+                blockEncoder.reset();
+            }
+            block = blockEncoder;
+        }
+
+        /**
+         * tokenize buf[pos, end), keeping MAX_MATCH bytes of lookahead
+         * unless this is the last data
+         * @return position of the first byte not tokenized yet
+         */
+        public int encode(byte[] buf, int pos, int end, boolean last) throws IOException {
+            block.mark = phaseStart();
+            int stop = last ? end : end - MAX_MATCH;
+            while (pos < stop) {
+                if (!pending && block.count == 0) {
+                    int run = runLength(buf, pos, Math.min(stop, pos + MAX_BLOCK_SIZE));
+                    if (run >= MIN_CONSTANT) {
+                        block.constant(buf[pos] & 0xFF, run);
+                        pos += run;
+                        // the end of the run stays in reach of later matches
+                        for (int i = pos - MAX_MATCH; i < pos; i++) {
+                            finder.insert(buf, i, end);
+                        }
+                        continue;
+                    }
+                }
+                int len = 0;
+                if (prevLen < LAZY_LENGTH) {
+                    len = finder.find(buf, pos, end);
+                    if (len == MIN_MATCH && finder.distance() > TOO_FAR) {
+                        len = 0;
+                    }
+                }
+                else {
+                    finder.insert(buf, pos, end);
+                }
+                if (prevLen >= MIN_MATCH && len <= prevLen) {
+                    // the match at pos - 1 wins
+                    block.match(prevLen, prevDist, buf, pos - 1);
+                    int matchEnd = pos - 1 + prevLen;
+                    for (int i = pos + 1; i < matchEnd; i++) {
+                        finder.insert(buf, i, end);
+                    }
+                    pos = matchEnd;
+                    pending = false;
+                    prevLen = 0;
+                    continue;
+                }
+                if (pending) {
+                    block.literal(buf[pos - 1] & 0xFF);
+                }
+                pending = true;
+                prevLen = len;
+                prevDist = finder.distance();
+                pos++;
+            }
+            if (last && pending) {
+                // nothing can match at the final byte
+                block.literal(buf[pos - 1] & 0xFF);
+                pending = false;
+                prevLen = 0;
+            }
+            phaseDone(CodecMetrics.Phase.Match, block.mark);
+            return pos;
+        }
+
+        /**
+         * code the last block and the end of stream marker, and flush the bits
+         */
+        public void finish() throws IOException {
+            block.mark = phaseStart();
+            block.flush();
+            long start = phaseStart();
+            block.bw.writeInt(0);
+            block.bw.flush();
+            phaseDone(CodecMetrics.Phase.Flush, start);
+        }
+    }
+
+    /**
+     * constructor
+     * @param fileName file to be compressed
+     */
+    public LZHuffman(String pathName) {
+        super(pathName, "lzh");
+    }
+
+    /**
+     * constructor for stream compressing
+     */
+    public LZHuffman() {
+        super();
+    }
+
+    /**
+     * set the number of earlier positions tried per match search, lower is
+     * faster, higher compresses better
+     */
+    public void setChainDepth(int chainDepth) {
+        if (chainDepth < 1) {
+            throw new IllegalArgumentException("chain depth out of range: " + chainDepth);
+        }
+        this.chainDepth = chainDepth;
+    }
+
+    public int getChainDepth() {
+        return chainDepth;
+    }
+
+    /**
+     * compress a stream in one pass through a sliding buffer
+     * | block | block | ... | 0 (4 bytes) |
+     * @return compressed size
+     */
+    @Override
+    protected long compressStream(InputStream ins, OutputStream outs) throws IOException {
+        BitWriter bw = newBitWriter(outs);
+        Encoder encoder = new Encoder(bw);
+        byte[] buf = buffer();
+        int pos = 0;
+        int end = 0;
+        boolean last = false;
+        while (!last) {
+            if (end == buf.length) {
+                // drop the oldest chunk, at least a window of history stays
+                System.arraycopy(buf, BUF_SIZE, buf, 0, end - BUF_SIZE);
+                pos -= BUF_SIZE;
+                end -= BUF_SIZE;
+                encoder.finder.slide(BUF_SIZE);
+            }
+            int n = ins.read(buf, end, buf.length - end);
+            if (n < 0) {
+                last = true;
+            }
+            else {
+                end += n;
+            }
+            pos = encoder.encode(buf, pos, end, last);
+        }
+        encoder.finish();
+        return bw.bytesWritten();
+    }
+
+    /**
+     * encode bytes
+     * | block | block | ... | 0 (4 bytes) |
+     * @return encoded size
+     */
+    @Override
+    protected long encode(byte[] src, int off, int len, OutputStream outs)
+                throws IOException
+    {
+        BitWriter bw = newBitWriter(outs);
+        Encoder encoder = new Encoder(bw);
+        encoder.encode(src, off, off + len, true);
+        encoder.finish();
+        return bw.bytesWritten();
+    }
+
+    /**
+     * decode a LZHuffman encoded stream
+     * @return decoded size
+     */
+    @Override
+    protected long decode(InputStream ins, OutputStream outs) throws IOException {
+        BitReader br = newBitReader(ins);
+        byte[] litLengths = new byte[NUM_LITLEN];
+        byte[] distLengths = new byte[NUM_DIST];
+        int[] litCodes = new int[NUM_LITLEN];
+        int[] distCodes = new int[NUM_DIST];
+        HuffmanCodes litBuilder = new HuffmanCodes(NUM_LITLEN, MAX_CODE_LEN);
+        HuffmanCodes distBuilder = new HuffmanCodes(NUM_DIST, MAX_CODE_LEN);
+
+        // out[0, done) is written already, the window behind outPos stays
+        int window = 1 << WINDOW_BITS;
+        byte[] out = buffer();
+        int outPos = 0;
+        int done = 0;
+        long size = 0;
+
+        long start = phaseStart();
+        while (true) {
+            int header = br.readInt();
+            int type = BlockType.type(header);
+            int rawLen = BlockType.size(header);
+            if (rawLen == 0 || rawLen > MAX_BLOCK_SIZE || type > BlockType.CONSTANT) {
+                if (header != 0) {
+                    throw new IOException("Corrupted LZHuffman block header: " + header);
+                }
+                break;
+            }
+            if (type != BlockType.CODED) {
+                byte b = type == BlockType.CONSTANT ? (byte)br.readBits(8) : 0;
+                for (int remaining = rawLen; remaining > 0; ) {
+                    if (outPos > window + BUF_SIZE) {
+                        outs.write(out, done, outPos - done);
+                        size += outPos - done;
+                        System.arraycopy(out, outPos - window, out, 0, window);
+                        outPos = window;
+                        done = window;
+                    }
+                    int n = Math.min(remaining, out.length - outPos);
+                    if (type == BlockType.CONSTANT) {
+                        Arrays.fill(out, outPos, outPos + n, b);
+                    }
+                    else {
+                        br.readBytes(out, outPos, n);
+                    }
+                    outPos += n;
+                    remaining -= n;
+                }
+                if (br.overrun()) {
+                    throw new IOException("Corrupted LZHuffman stream: truncated block");
+                }
+                start = phaseDone(CodecMetrics.Phase.Decode, start);
+                continue;
+            }
+            HuffmanCodes.readLengths(litLengths, NUM_LITLEN, br);
+            HuffmanCodes.readLengths(distLengths, NUM_DIST, br);
+            litBuilder.assignCodes(litLengths, NUM_LITLEN, litCodes);
+            distBuilder.assignCodes(distLengths, NUM_DIST, distCodes);
+            if (litTable == null) {
+                litTable = new HuffmanTable(litCodes, litLengths, NUM_LITLEN);
+                distTable = new HuffmanTable(distCodes, distLengths, NUM_DIST);
+            }
+            else {
+                litTable.build(litCodes, litLengths, NUM_LITLEN);
+                distTable.build(distCodes, distLengths, NUM_DIST);
+            }
+            start = phaseDone(CodecMetrics.Phase.ReadHeader, start);
+
+            int remaining = rawLen;
+            while (remaining > 0) {
+                if (outPos > window + BUF_SIZE) {
+                    outs.write(out, done, outPos - done);
+                    size += outPos - done;
+                    System.arraycopy(out, outPos - window, out, 0, window);
+                    outPos = window;
+                    done = window;
+                }
+                // a whole token is at most 15 + 5 + 15 + 13 bits
+                if (br.bitCount < 48) {
+                    br.refill();
+                }
+                int entry = litTable.lookup(br.bitBuf);
+                br.consume(entry & HuffmanTable.LEN_MASK);
+                int sym = entry >>> 8;
+                if (sym < 256) {
+                    out[outPos++] = (byte)sym;
+                    remaining--;
+                    continue;
+                }
+                if (sym == 256) {
+                    throw new IOException("Corrupted LZHuffman stream: unused symbol 256");
+                }
+                int c = sym - 257;
+                int len = LEN_BASE[c] + ((int)br.bitBuf & ((1 << LEN_EXTRA[c]) - 1));
+                br.consume(LEN_EXTRA[c]);
+                entry = distTable.lookup(br.bitBuf);
+                br.consume(entry & HuffmanTable.LEN_MASK);
+                c = entry >>> 8;
+                int dist = DIST_BASE[c] + ((int)br.bitBuf & ((1 << DIST_EXTRA[c]) - 1));
+                br.consume(DIST_EXTRA[c]);
+                if (dist > outPos || len > remaining) {
+                    throw new IOException("Corrupted LZHuffman match: length " + len +
+                                          " distance " + dist);
+                }
+                int from = outPos - dist;
+                if (dist >= len) {
+                    System.arraycopy(out, from, out, outPos, len);
+                }
+                else {
+                    // overlapping copy repeats the last dist bytes
+                    for (int i = 0; i < len; i++) {
+                        out[outPos + i] = out[from + i];
+                    }
+                }
+                outPos += len;
+                remaining -= len;
+            }
+            if (br.overrun()) {
+                throw new IOException("Corrupted LZHuffman stream: truncated block");
+            }
+            start = phaseDone(CodecMetrics.Phase.Decode, start);
+        }
+        outs.write(out, done, outPos - done);
+        size += outPos - done;
+        return size;
+    }
+
+    /**
+     * length of the run of buf[pos] starting at pos, up to end
+     */
+    static int runLength(byte[] buf, int pos, int end) {
+        int i = pos + 1;
+        while (i < end && buf[i] == buf[pos]) {
+            i++;
+        }
+        return i - pos;
+    }
+
+    /**
+     * largest encoded size: every block stored behind its header and the
+     * padding to a byte, a block ends at BLOCK_TOKENS tokens so holds at
+     * least that many bytes
+     */
+    @Override
+    protected long maxEncodedLength(long len) {
+        return len + 5 * (len / BLOCK_TOKENS + 1) + 5;
+    }
+
+    /**
+     * match finder for the current chain depth, emptied
+     */
+    private MatchFinder matchFinder() {
+        if (finder == null || finder.chainDepth != chainDepth) {
+            finder = new MatchFinder(WINDOW_BITS, chainDepth, NICE_LENGTH, MAX_MATCH);
+        }
+        else {
+            finder.reset();
+        }
+        return finder;
+    }
+
+    /**
+     * sliding buffer, its contents are not kept
+     */
+    private byte[] buffer() {
+        if (buffer == null) {
+            buffer = new byte[(1 << WINDOW_BITS) + BUF_SIZE + MAX_MATCH];
+        }
+        return buffer;
+    }
+}
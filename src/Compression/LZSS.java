@@ -0,0 +1,569 @@
+package Compression;
+
+import java.util.Arrays;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import Compression.AbstractCompressor;
+
+/**
+ * LZSS sliding window compressing, byte oriented so that decompressing
+ * is a plain copy loop
+ * @author Hang Yuan
+ */
+public class LZSS extends AbstractCompressor {
+
+    /**
+     * shortest and longest match coded, a match token is 3 bytes
+     */
+    static final int MIN_MATCH = 4;
+    static final int MAX_MATCH = MIN_MATCH + 255;
+
+    public static final int MIN_WINDOW_BITS = 10;
+    public static final int MAX_WINDOW_BITS = 16;
+    public static final int DEFAULT_WINDOW_BITS = 16;
+    public static final int DEFAULT_CHAIN_DEPTH = 16;
+
+    /**
+     * stop searching the chain once a match is this long
+     */
+    static final int NICE_LENGTH = 128;
+
+    /**
+     * literals this many or more in a row are copied as one run token
+     */
+    static final int MIN_RUN = 32;
+
+    /**
+     * after 1 << SKIP_SHIFT literals in a row the search steps over bytes,
+     * one more for every further 1 << SKIP_SHIFT, so data without matches
+     * is not searched at every byte
+     */
+    static final int SKIP_SHIFT = 6;
+
+    /**
+     * largest group: flags byte and 8 run tokens
+     */
+    static final int GROUP_SIZE = 1 + 8 * (3 + MAX_MATCH);
+
+    /**
+     * input bytes per block, each block is coded, stored or constant
+     */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * a block coded into the token buffer is abandoned once it reaches
+     * its input size, up to a run of literals and a group later
+     */
+    static final int TOKENS_SIZE = 4 + BLOCK_SIZE + BLOCK_SIZE / 8 + 2 * GROUP_SIZE;
+
+    static final int BUF_SIZE = 1 << 16;
+
+    int windowBits = DEFAULT_WINDOW_BITS;
+    int chainDepth = DEFAULT_CHAIN_DEPTH;
+
+    // kept from one operation to the next
+    MatchFinder finder = null;
+    byte[] tokens = null;
+    byte[] buffer = new byte[0];
+
+    /**
+     * per-stream encoding state: the input is coded in blocks of at most
+     * BLOCK_SIZE bytes behind a block header, see BlockType; a block coding
+     * would not shrink is stored, a block of one byte repeated is that byte
+     * | block header | groups of tokens |
+     * |   4 bytes    |      .....       |
+     * tokens are written in groups of 8 behind a flags byte, bit i set if
+     * token i is a match, the last group of a block may be short
+     * | flags | literal (1 byte) or match (length - MIN_MATCH, distance) | ...
+     * |   1   |      1 byte                  1 byte        2 bytes       |
+     * a match of distance 0 is a run of literals copied as they are, so
+     * long stretches without matches grow by 3 bytes a run instead of 1 in 8
+     * | length - MIN_MATCH | 0 (2 bytes) | run bytes |
+     */
+    class Encoder {
+        OutputStream outs;
+        MatchFinder finder = matchFinder();
+        byte[] out = tokens();
+        int outPos = 0;
+        long written = 0;
+        int flagPos = 0;
+        int flagBit = 8;
+
+        public Encoder(OutputStream outs) throws IOException {
+            this.outs = outs;
+            outs.write(windowBits);
+            written = 1;
+        }
+
+        /**
+         * code buf[from, to), at most BLOCK_SIZE bytes, as one block;
+         * matches reach back into the blocks before it in buf
+         */
+        public void block(byte[] buf, int from, int to) throws IOException {
+            long start = phaseStart();
+            int len = to - from;
+            if (BlockType.isConstant(buf, from, len)) {
+                writeHeader(BlockType.CONSTANT, len);
+                out[outPos++] = buf[from];
+            }
+            else if (!code(buf, from, to)) {
+                outPos = 0;
+                writeHeader(BlockType.STORED, len);
+                System.arraycopy(buf, from, out, outPos, len);
+                outPos += len;
+            }
+            outs.write(out, 0, outPos);
+            written += outPos;
+            outPos = 0;
+            phaseDone(CodecMetrics.Phase.Encode, start);
+        }
+
+        /**
+         * write the end marker, an empty block header
+         * @return compressed size
+         */
+        public long finish() throws IOException {
+            long start = phaseStart();
+            writeHeader(BlockType.CODED, 0);
+            outs.write(out, 0, outPos);
+            written += outPos;
+            outPos = 0;
+            phaseDone(CodecMetrics.Phase.Flush, start);
+            return written;
+        }
+
+        /**
+         * code buf[from, to) into out behind a block header
+         * @return false when that is not smaller than the block, which is
+         *         given up as soon as it cannot be
+         */
+        private boolean code(byte[] buf, int from, int to) {
+            int limit = outPos + 4 + (to - from);
+            writeHeader(BlockType.CODED, to - from);
+            flagBit = 8;
+            int pos = from;
+            int lit = pos;  // literals buf[lit, pos) are not written yet
+            while (pos < to) {
+                // the literals pending cost at least a byte each and a run token per MAX_MATCH
+                int pending = pos - lit;
+                if (outPos + pending + 3 * (pending / MAX_MATCH) >= limit) {
+                    return false;
+                }
+                int len = finder.find(buf, pos, to);
+                if (len < MIN_MATCH) {
+                    pos = Math.min(to, pos + 1 + (pending >> SKIP_SHIFT));
+                    continue;
+                }
+                int dist = finder.distance();
+                literals(buf, lit, pos);
+                if (flagBit == 8) {
+                    newGroup();
+                }
+                out[flagPos] |= 1 << flagBit;
+                out[outPos++] = (byte)(len - MIN_MATCH);
+                out[outPos++] = (byte)(dist >>> 8);
+                out[outPos++] = (byte)dist;
+                flagBit++;
+                for (int i = pos + 1; i < pos + len; i++) {
+                    finder.insert(buf, i, to);
+                }
+                pos += len;
+                lit = pos;
+            }
+            literals(buf, lit, pos);
+            return outPos < limit;
+        }
+
+        /**
+         * write buf[from, to) as literal tokens, long stretches as runs
+         */
+        private void literals(byte[] buf, int from, int to) {
+            while (from < to) {
+                if (flagBit == 8) {
+                    newGroup();
+                }
+                int n = Math.min(to - from, MAX_MATCH);
+                if (n >= MIN_RUN) {
+                    out[flagPos] |= 1 << flagBit;
+                    out[outPos++] = (byte)(n - MIN_MATCH);
+                    out[outPos++] = 0;
+                    out[outPos++] = 0;
+                    System.arraycopy(buf, from, out, outPos, n);
+                    outPos += n;
+                    from += n;
+                }
+                else {
+                    out[outPos++] = buf[from++];
+                }
+                flagBit++;
+            }
+        }
+
+        private void newGroup() {
+            flagPos = outPos;
+            out[outPos++] = 0;
+            flagBit = 0;
+        }
+
+        private void writeHeader(int type, int len) {
+            int header = BlockType.header(type, len);
+            out[outPos++] = (byte)(header >>> 24);
+            out[outPos++] = (byte)(header >>> 16);
+            out[outPos++] = (byte)(header >>> 8);
+            out[outPos++] = (byte)header;
+        }
+    }
+
+    /**
+     * per-stream decoding state: the compressed input is read in bulk
+     * into in, the output collects in out where the window behind outPos
+     * stays for matches, out[0, done) is written already
+     */
+    class Decoder {
+        InputStream ins;
+        OutputStream outs;
+        int window;
+        int chunk;
+        byte[] in = tokens();
+        int inPos = 0;
+        int inEnd = 0;
+        byte[] out;
+        int outPos = 0;
+        int done = 0;
+        long size = 0;
+
+        public Decoder(InputStream ins, OutputStream outs, int windowBits) {
+            this.ins = ins;
+            this.outs = outs;
+            this.window = 1 << windowBits;
+            this.chunk = Math.max(window, BUF_SIZE);
+            this.out = buffer(window + chunk + MAX_MATCH);
+        }
+
+        /**
+         * next block header
+         */
+        public int readHeader() throws IOException {
+            if (!fill(4)) {
+                throw new IOException("Corrupted LZSS stream: missing end marker");
+            }
+            int header = (in[inPos] & 0xFF) << 24 | (in[inPos + 1] & 0xFF) << 16
+                         | (in[inPos + 2] & 0xFF) << 8 | (in[inPos + 3] & 0xFF);
+            inPos += 4;
+            return header;
+        }
+
+        /**
+         * copy a stored block of len bytes
+         */
+        public void stored(int len) throws IOException {
+            while (len > 0) {
+                room();
+                if (!fill(1)) {
+                    throw new IOException("Corrupted LZSS stream: truncated stored block");
+                }
+                int n = Math.min(len, Math.min(inEnd - inPos, out.length - outPos));
+                System.arraycopy(in, inPos, out, outPos, n);
+                inPos += n;
+                outPos += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * repeat the next byte len times
+         */
+        public void constant(int len) throws IOException {
+            if (!fill(1)) {
+                throw new IOException("Corrupted LZSS stream: truncated constant block");
+            }
+            byte b = in[inPos++];
+            while (len > 0) {
+                room();
+                int n = Math.min(len, out.length - outPos);
+                Arrays.fill(out, outPos, outPos + n, b);
+                outPos += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * decode the tokens of a block of len bytes
+         */
+        public void coded(int len) throws IOException {
+            int remaining = len;
+            while (remaining > 0) {
+                if (!fill(1)) {
+                    throw new IOException("Corrupted LZSS stream: truncated block");
+                }
+                fill(GROUP_SIZE);
+                int flags = in[inPos++] & 0xFF;
+                for (int bit = 0; bit < 8 && remaining > 0; bit++) {
+                    room();
+                    if ((flags & (1 << bit)) == 0) {
+                        if (inPos == inEnd) {
+                            throw new IOException("Corrupted LZSS stream: truncated block");
+                        }
+                        out[outPos++] = in[inPos++];
+                        remaining--;
+                        continue;
+                    }
+                    if (inEnd - inPos < 3) {
+                        throw new IOException("Corrupted LZSS stream: truncated block");
+                    }
+                    int n = (in[inPos] & 0xFF) + MIN_MATCH;
+                    int dist = (in[inPos + 1] & 0xFF) << 8 | (in[inPos + 2] & 0xFF);
+                    inPos += 3;
+                    if (n > remaining) {
+                        throw new IOException("Corrupted LZSS stream: token of " + n
+                                              + " bytes past the block end");
+                    }
+                    if (dist == 0) {
+                        // run of literals
+                        if (inEnd - inPos < n) {
+                            throw new IOException("Corrupted LZSS stream: truncated literal run");
+                        }
+                        System.arraycopy(in, inPos, out, outPos, n);
+                        inPos += n;
+                    }
+                    else {
+                        if (dist > outPos) {
+                            throw new IOException("Corrupted LZSS match distance: " + dist);
+                        }
+                        int from = outPos - dist;
+                        if (dist >= n) {
+                            System.arraycopy(out, from, out, outPos, n);
+                        }
+                        else {
+                            // overlapping copy repeats the last dist bytes
+                            for (int i = 0; i < n; i++) {
+                                out[outPos + i] = out[from + i];
+                            }
+                        }
+                    }
+                    outPos += n;
+                    remaining -= n;
+                }
+            }
+        }
+
+        /**
+         * write what is left
+         * @return decoded size
+         */
+        public long finish() throws IOException {
+            outs.write(out, done, outPos - done);
+            size += outPos - done;
+            done = outPos;
+            return size;
+        }
+
+        /*
+         * make room for a token: write out the output and keep the window
+         */
+        private void room() throws IOException {
+            if (outPos > window + chunk) {
+                outs.write(out, done, outPos - done);
+                size += outPos - done;
+                System.arraycopy(out, outPos - window, out, 0, window);
+                outPos = window;
+                done = window;
+            }
+        }
+
+        /*
+         * have at least n unread bytes in the input buffer, if there are
+         * @return false at end of input with fewer left
+         */
+        private boolean fill(int n) throws IOException {
+            if (inEnd - inPos < n) {
+                System.arraycopy(in, inPos, in, 0, inEnd - inPos);
+                inEnd -= inPos;
+                inPos = 0;
+                int read;
+                while (inEnd < in.length && (read = ins.read(in, inEnd, in.length - inEnd)) > 0) {
+                    inEnd += read;
+                }
+            }
+            return inEnd - inPos >= n;
+        }
+    }
+
+    /**
+     * constructor
+     * @param fileName file to be compressed
+     */
+    public LZSS(String pathName) {
+        super(pathName, "lzs");
+    }
+
+    /**
+     * constructor for stream compressing
+     */
+    public LZSS() {
+        super();
+    }
+
+    /**
+     * set the window size, matches reach back (1 << windowBits) - 1 bytes
+     */
+    public void setWindowBits(int windowBits) {
+        if (windowBits < MIN_WINDOW_BITS || windowBits > MAX_WINDOW_BITS) {
+            throw new IllegalArgumentException("window bits out of range: " + windowBits);
+        }
+        this.windowBits = windowBits;
+    }
+
+    public int getWindowBits() {
+        return windowBits;
+    }
+
+    /**
+     * set the number of earlier positions tried per match search, lower is
+     * faster, higher compresses better
+     */
+    public void setChainDepth(int chainDepth) {
+        if (chainDepth < 1) {
+            throw new IllegalArgumentException("chain depth out of range: " + chainDepth);
+        }
+        this.chainDepth = chainDepth;
+    }
+
+    public int getChainDepth() {
+        return chainDepth;
+    }
+
+    /**
+     * compress a stream in one pass through a sliding buffer
+     * | window bits | block | block | ... | 0 (4 bytes) |
+     * |   1 byte    |        see Encoder              |
+     * @return compressed size
+     */
+    @Override
+    protected long compressStream(InputStream ins, OutputStream outs) throws IOException {
+        Encoder encoder = new Encoder(outs);
+        int window = 1 << windowBits;
+        int chunk = Math.max(window, BUF_SIZE);
+        byte[] buf = buffer(window + chunk + BLOCK_SIZE);
+        int pos = 0;
+        int end = 0;
+        boolean last = false;
+        while (!last) {
+            if (end == buf.length) {
+                // drop the oldest chunk, at least a window of history stays
+                System.arraycopy(buf, chunk, buf, 0, end - chunk);
+                pos -= chunk;
+                end -= chunk;
+                encoder.finder.slide(chunk);
+            }
+            int n = ins.read(buf, end, buf.length - end);
+            if (n < 0) {
+                last = true;
+            }
+            else {
+                end += n;
+            }
+            while (end - pos >= BLOCK_SIZE || (last && pos < end)) {
+                int len = Math.min(BLOCK_SIZE, end - pos);
+                encoder.block(buf, pos, pos + len);
+                pos += len;
+            }
+        }
+        return encoder.finish();
+    }
+
+    /**
+     * encode bytes
+     * | window bits | block | block | ... | 0 (4 bytes) |
+     * |   1 byte    |        see Encoder              |
+     * @return encoded size
+     */
+    @Override
+    protected long encode(byte[] src, int off, int len, OutputStream outs)
+                throws IOException
+    {
+        Encoder encoder = new Encoder(outs);
+        for (int pos = off; pos < off + len; pos += BLOCK_SIZE) {
+            encoder.block(src, pos, Math.min(pos + BLOCK_SIZE, off + len));
+        }
+        return encoder.finish();
+    }
+
+    /**
+     * decode a LZSS encoded stream
+     * @return decoded size
+     */
+    @Override
+    protected long decode(InputStream ins, OutputStream outs) throws IOException {
+        long start = phaseStart();
+        int windowBits = ins.read();
+        if (windowBits < MIN_WINDOW_BITS || windowBits > MAX_WINDOW_BITS) {
+            throw new IOException("Corrupted LZSS header: window bits " + windowBits);
+        }
+        Decoder decoder = new Decoder(ins, outs, windowBits);
+        start = phaseDone(CodecMetrics.Phase.ReadHeader, start);
+
+        while (true) {
+            int header = decoder.readHeader();
+            int type = BlockType.type(header);
+            int len = BlockType.size(header);
+            if (len == 0 || len > BLOCK_SIZE || type > BlockType.CONSTANT) {
+                if (header != 0) {
+                    throw new IOException("Corrupted LZSS block header: " + header);
+                }
+                break;
+            }
+            if (type == BlockType.CONSTANT) {
+                decoder.constant(len);
+            }
+            else if (type == BlockType.STORED) {
+                decoder.stored(len);
+            }
+            else {
+                decoder.coded(len);
+            }
+        }
+        long size = decoder.finish();
+        phaseDone(CodecMetrics.Phase.Decode, start);
+        return size;
+    }
+
+    /**
+     * largest encoded size: every block stored behind its header
+     */
+    @Override
+    protected long maxEncodedLength(long len) {
+        return 1 + len + 4 * ((len + BLOCK_SIZE - 1) / BLOCK_SIZE) + 4;
+    }
+
+    /**
+     * match finder for the current window and chain depth, emptied
+     */
+    private MatchFinder matchFinder() {
+        if (finder == null || finder.windowSize != 1 << windowBits || finder.chainDepth != chainDepth) {
+            finder = new MatchFinder(windowBits, chainDepth, NICE_LENGTH, MAX_MATCH);
+        }
+        else {
+            finder.reset();
+        }
+        return finder;
+    }
+
+    private byte[] tokens() {
+        if (tokens == null) {
+            tokens = new byte[TOKENS_SIZE];
+        }
+        return tokens;
+    }
+
+    /**
+     * sliding buffer of at least size bytes, its contents are not kept
+     */
+    private byte[] buffer(int size) {
+        if (buffer.length < size) {
+            buffer = new byte[size];
+        }
+        return buffer;
+    }
+}
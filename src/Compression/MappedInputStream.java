@@ -0,0 +1,117 @@
+package Compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * InputStream over a memory-mapped file: the file is mapped one window
+ * at a time, so files of any size are read without read() syscalls or
+ * an extra buffer copy
+ * @author Hang Yuan
+ */
+class MappedInputStream extends InputStream {
+
+    /**
+     * bytes mapped at once
+     */
+    static final long MAP_WINDOW = 1L << 28;
+
+    FileChannel channel;
+    long size;
+    long mapPos;        // file offset of the current window
+    MappedByteBuffer map = null;
+
+    /**
+     * constructor
+     * @param fileName file to read, from its first byte
+     */
+    public MappedInputStream(String fileName) throws IOException {
+        this(FileChannel.open(Paths.get(fileName), StandardOpenOption.READ), 0);
+    }
+
+    /**
+     * constructor, the stream owns the channel and closes it
+     * @param channel file to read
+     * @param offset first byte to read
+     */
+    public MappedInputStream(FileChannel channel, long offset) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.mapPos = offset;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensure()) {
+            return -1;
+        }
+        return map.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensure()) {
+            return -1;
+        }
+        len = Math.min(len, map.remaining());
+        map.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = Math.max(0, Math.min(n, size - position()));
+        long target = position() + skipped;
+        if (map != null && target < mapPos + map.limit()) {
+            map.position((int)(target - mapPos));
+        }
+        else {
+            // map again from the target on next access
+            map = null;
+            mapPos = target;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)Math.min(size - position(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        map = null;
+        channel.close();
+    }
+
+    /**
+     * file offset of the next byte
+     */
+    public long position() {
+        return map == null ? mapPos : mapPos + map.position();
+    }
+
+    /*
+     * map the next window once the current one is used up
+     * @return false at end of file
+     */
+    private boolean ensure() throws IOException {
+        if (map != null && map.hasRemaining()) {
+            return true;
+        }
+        long next = position();
+        if (next >= size) {
+            return false;
+        }
+        map = channel.map(FileChannel.MapMode.READ_ONLY, next, Math.min(MAP_WINDOW, size - next));
+        mapPos = next;
+        return true;
+    }
+}
@@ -0,0 +1,173 @@
+package Compression;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * hash chain match finder for sliding window LZ coders: every position is
+ * chained under the hash of its first MIN_MATCH bytes, a search walks the
+ * chain newest first and keeps the longest match within the window
+ *
+ * A head entry holds the position in its low 32 bits and the generation
+ * it was added in above them, reset starts a new generation so that
+ * reusing a finder costs nothing. prev is only read for positions of the
+ * current generation and needs no clearing either
+ * @author Hang Yuan
+ */
+class MatchFinder {
+
+    static final int MIN_MATCH = 3;
+    static final int HASH_BITS = 15;
+    static final int NIL = -1;
+
+    static final VarHandle LONG_LE =
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    int windowSize;
+    int windowMask;
+    int chainDepth;
+    int niceLength;
+    int maxMatch;
+
+    // (generation << 32) | newest position of each hash
+    long[] head = new long[1 << HASH_BITS];
+    // previous position of the same hash
+    int[] prev;
+    int generation = -1;
+    long stamp;
+
+    int matchDistance = 0;
+
+    /**
+     * constructor
+     * @param windowBits matches reach back at most (1 << windowBits) - 1 bytes
+     * @param chainDepth chain entries tried per search
+     * @param niceLength stop searching once a match is this long
+     * @param maxMatch longest match returned
+     */
+    public MatchFinder(int windowBits, int chainDepth, int niceLength, int maxMatch) {
+        this.windowSize = 1 << windowBits;
+        this.windowMask = windowSize - 1;
+        this.chainDepth = chainDepth;
+        this.niceLength = niceLength;
+        this.maxMatch = maxMatch;
+        this.prev = new int[windowSize];
+        Arrays.fill(head, -1L);
+        reset();
+    }
+
+    /**
+     * forget all positions
+     */
+    public void reset() {
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(head, -1L);
+            generation = -1;
+        }
+        generation++;
+        stamp = (long)generation << 32;
+    }
+
+    /**
+     * find the longest match for buf[pos, end) and add pos to the chains
+     * @return match length, 0 if shorter than MIN_MATCH
+     */
+    public int find(byte[] buf, int pos, int end) {
+        int max = Math.min(maxMatch, end - pos);
+        if (max < MIN_MATCH) {
+            return 0;
+        }
+        int h = hash(buf, pos);
+        int cur = newest(h);
+        head[h] = stamp | pos;
+        prev[pos & windowMask] = cur;
+
+        // candidates at or below limit are out of the window, or NIL
+        int limit = Math.max(pos - windowSize, NIL);
+        int nice = Math.min(niceLength, max);
+        int best = MIN_MATCH - 1;
+        int bestDist = 0;
+        for (int depth = chainDepth; cur > limit && depth > 0; depth--) {
+            if (buf[cur + best] == buf[pos + best]) {
+                int len = matchLength(buf, cur, pos, max);
+                if (len > best) {
+                    best = len;
+                    bestDist = pos - cur;
+                    if (len >= nice) {
+                        break;
+                    }
+                }
+            }
+            cur = prev[cur & windowMask];
+        }
+        matchDistance = bestDist;
+        return best >= MIN_MATCH ? best : 0;
+    }
+
+    /**
+     * add pos to the chains without searching, e.g. inside a match
+     */
+    public void insert(byte[] buf, int pos, int end) {
+        if (end - pos < MIN_MATCH) {
+            return;
+        }
+        int h = hash(buf, pos);
+        prev[pos & windowMask] = newest(h);
+        head[h] = stamp | pos;
+    }
+
+    /**
+     * buffer contents moved down by delta bytes, delta must be a multiple
+     * of the window size
+     */
+    public void slide(int delta) {
+        for (int h = 0; h < head.length; h++) {
+            int v = newest(h) - delta;
+            head[h] = v < 0 ? -1L : stamp | v;
+        }
+        for (int i = 0; i < prev.length; i++) {
+            int v = prev[i] - delta;
+            prev[i] = v < 0 ? NIL : v;
+        }
+    }
+
+    /**
+     * distance of the last match found
+     */
+    public int distance() {
+        return matchDistance;
+    }
+
+    /**
+     * length of the common prefix of buf[a, a + max) and buf[b, b + max)
+     */
+    static int matchLength(byte[] buf, int a, int b, int max) {
+        int len = 0;
+        while (len + 8 <= max) {
+            long diff = (long)LONG_LE.get(buf, a + len) ^ (long)LONG_LE.get(buf, b + len);
+            if (diff != 0) {
+                return len + (Long.numberOfTrailingZeros(diff) >>> 3);
+            }
+            len += 8;
+        }
+        while (len < max && buf[a + len] == buf[b + len]) {
+            len++;
+        }
+        return len;
+    }
+
+    private int hash(byte[] buf, int pos) {
+        int v = (buf[pos] & 0xFF) | (buf[pos + 1] & 0xFF) << 8 | (buf[pos + 2] & 0xFF) << 16;
+        return (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    /*
+     * newest position of a hash in the current generation, NIL if none
+     */
+    private int newest(int h) {
+        long e = head[h];
+        return (e & ~0xFFFFFFFFL) == stamp ? (int)e : NIL;
+    }
+}
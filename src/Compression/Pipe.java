@@ -0,0 +1,243 @@
+package Compression;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * bounded pipe between two threads: the writing side fills buffers and
+ * hands them to the reading side, waiting for a free one when the reader
+ * falls behind, so no more than the given buffers are ever held.
+ * A failure of the writer is thrown by the reader at the end of the data.
+ * @author Hang Yuan
+ */
+class Pipe {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    public static final int DEFAULT_BUFFERS = 3;
+
+    /**
+     * a buffer handed from the writer to the reader
+     */
+    class Chunk {
+        byte[] data;
+        int len = 0;
+
+        public Chunk(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * writing side, flush hands over what is buffered so far
+     */
+    class Output extends OutputStream {
+        Chunk current = null;
+        boolean closed = false;
+
+        @Override
+        public void write(int b) throws IOException {
+            room();
+            current.data[current.len++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                room();
+                int n = Math.min(len, current.data.length - current.len);
+                System.arraycopy(b, off, current.data, current.len, n);
+                current.len += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (current != null && current.len > 0) {
+                put(current);
+                current = null;
+            }
+        }
+
+        /**
+         * hand over the rest and end the data
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            put(END);
+        }
+
+        /**
+         * end the data with a failure, thrown by the reader when it gets there
+         * @param e the failure
+         */
+        public void fail(IOException e) throws IOException {
+            if (closed) {
+                return;
+            }
+            error = e;
+            closed = true;
+            // a buffer not handed over is dropped, END always fits in filled
+            put(END);
+        }
+
+        /*
+         * make sure the current buffer has room, taking a free one if needed
+         */
+        private void room() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (current != null && current.len == current.data.length) {
+                put(current);
+                current = null;
+            }
+            if (current == null) {
+                current = take(free);
+                current.len = 0;
+            }
+        }
+    }
+
+    /**
+     * reading side, returns -1 once the writer closed its side
+     */
+    class Input extends InputStream {
+        Chunk current = null;
+        int pos = 0;
+        boolean ended = false;
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return current.data[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            len = Math.min(len, current.len - pos);
+            System.arraycopy(current.data, pos, b, off, len);
+            pos += len;
+            return len;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0 || !fill()) {
+                return 0;
+            }
+            int skipped = (int)Math.min(n, current.len - pos);
+            pos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.len - pos;
+        }
+
+        /**
+         * read and drop the rest, so the writer never waits on a reader
+         * that stopped early
+         */
+        public void drain() throws IOException {
+            while (fill()) {
+                pos = current.len;
+            }
+        }
+
+        /*
+         * make sure there is data to read, false at the end
+         */
+        private boolean fill() throws IOException {
+            while (current == null || pos == current.len) {
+                if (ended) {
+                    return false;
+                }
+                if (current != null) {
+                    free.add(current);
+                    current = null;
+                }
+                Chunk chunk = take(filled);
+                pos = 0;
+                if (chunk == END) {
+                    ended = true;
+                    if (error != null) {
+                        throw error;
+                    }
+                    return false;
+                }
+                current = chunk;
+            }
+            return true;
+        }
+    }
+
+    final Chunk END = new Chunk(null);
+
+    BlockingQueue<Chunk> free;
+    BlockingQueue<Chunk> filled;
+    volatile IOException error = null;
+
+    /**
+     * constructor with DEFAULT_BUFFERS buffers of DEFAULT_BUFFER_SIZE
+     */
+    public Pipe() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+    }
+
+    /**
+     * constructor
+     * @param bufferSize bytes per buffer
+     * @param buffers buffers in use, at least 2
+     */
+    public Pipe(int bufferSize, int buffers) {
+        if (bufferSize < 1 || buffers < 2) {
+            throw new IllegalArgumentException("pipe buffers: " + buffers + " x " + bufferSize);
+        }
+        free = new ArrayBlockingQueue<Chunk>(buffers);
+        // room for every buffer plus the end
+        filled = new ArrayBlockingQueue<Chunk>(buffers + 1);
+        for (int i = 0; i < buffers; i++) {
+            free.add(new Chunk(new byte[bufferSize]));
+        }
+    }
+
+    private void put(Chunk chunk) throws IOException {
+        try {
+            filled.put(chunk);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing to pipe");
+        }
+    }
+
+    private Chunk take(BlockingQueue<Chunk> queue) throws IOException {
+        try {
+            return queue.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting on pipe");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package Compression;
+
+import java.io.IOException;
+
+/**
+ * 32-bit integer range coder with carry propagation
+ *
+ * low is kept in 33 bits, a carry out of bit 32 is added to the cached byte
+ * and the pending run of 0xFF bytes before they are written. The range is
+ * renormalized a whole byte at a time once it drops below 2^24, so a total
+ * frequency of up to MAX_TOTAL always leaves every symbol a non-empty range.
+ * @author Hang Yuan
+ */
+class RangeCoder {
+
+    /**
+     * largest total frequency a model may hand to the coder
+     */
+    public static final int MAX_TOTAL = 1 << 16;
+
+    static final long TOP = 1L << 24;
+    static final long MASK = 0xFFFFFFFFL;
+
+    /**
+     * range encoder
+     */
+    static class Encoder {
+        BitWriter bw;
+        long low = 0;
+        long range = MASK;
+        int cache = 0;
+        long cacheSize = 1;
+        long bytesWritten = 0;
+
+        public Encoder(BitWriter bw) {
+            this.bw = bw;
+        }
+
+        /**
+         * encode a symbol occupying [cumFreq, cumFreq + freq) of totFreq
+         */
+        public void encode(int cumFreq, int freq, int totFreq) throws IOException {
+            range /= totFreq;
+            low += cumFreq * range;
+            range *= freq;
+            while (range < TOP) {
+                range <<= 8;
+                shiftLow();
+            }
+        }
+
+        /**
+         * flush the remaining bytes of low
+         * @return total bytes written by this encoder
+         */
+        public long finish() throws IOException {
+            for (int i = 0; i < 5; i++) {
+                shiftLow();
+            }
+            return bytesWritten;
+        }
+
+        private void shiftLow() throws IOException {
+            if (low < 0xFF000000L || low > MASK) {
+                // top byte is settled: propagate carry into cached bytes
+                int carry = (int)(low >>> 32);
+                int temp = cache;
+                do {
+                    bw.writeByte((temp + carry) & 0xFF);
+                    bytesWritten++;
+                    temp = 0xFF;
+                } while (--cacheSize != 0);
+                cache = (int)((low >>> 24) & 0xFF);
+            }
+            cacheSize++;
+            low = (low & 0x00FFFFFFL) << 8;
+        }
+    }
+
+    /**
+     * range decoder
+     */
+    static class Decoder {
+        BitReader br;
+        long range = MASK;
+        long code = 0;
+
+        public Decoder(BitReader br) throws IOException {
+            this.br = br;
+            for (int i = 0; i < 5; i++) {
+                code = ((code << 8) | br.readByte()) & MASK;
+            }
+        }
+
+        /**
+         * get the cumulative frequency the next symbol falls into,
+         * must be followed by decode() with the symbol's range
+         */
+        public int getFreq(int totFreq) {
+            range /= totFreq;
+            long value = code / range;
+            return (int)Math.min(value, totFreq - 1);
+        }
+
+        /**
+         * consume a symbol occupying [cumFreq, cumFreq + freq)
+         */
+        public void decode(int cumFreq, int freq) throws IOException {
+            code -= cumFreq * range;
+            range *= freq;
+            while (range < TOP) {
+                code = ((code << 8) | br.readByte()) & MASK;
+                range <<= 8;
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package Compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * InputStream reading ahead on its own thread: the reader fills the next
+ * buffers while the caller consumes the current one, so reading overlaps
+ * the codec. At most the given number of buffers are filled ahead, the
+ * reader waits for a free one when the caller falls behind.
+ * @author Hang Yuan
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    public static final int DEFAULT_BUFFERS = 3;
+
+    /**
+     * a buffer handed from the reader thread to the caller
+     */
+    class Chunk {
+        byte[] data;
+        int len = 0;
+        boolean last = false;
+        IOException error = null;
+
+        public Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+
+    /**
+     * fills free chunks until end of input, an error or close
+     */
+    class Reader implements Runnable {
+        public void run() {
+            try {
+                while (true) {
+                    Chunk chunk = free.take();
+                    chunk.len = 0;
+                    try {
+                        int n;
+                        while (chunk.len < chunk.data.length &&
+                               (n = in.read(chunk.data, chunk.len, chunk.data.length - chunk.len)) > 0)
+                        {
+                            chunk.len += n;
+                        }
+                        chunk.last = chunk.len < chunk.data.length;
+                    }
+                    catch (IOException e) {
+                        chunk.error = e;
+                        chunk.last = true;
+                    }
+                    filled.put(chunk);
+                    if (chunk.last) {
+                        return;
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // closed
+            }
+        }
+    }
+
+    InputStream in;
+    BlockingQueue<Chunk> free;
+    BlockingQueue<Chunk> filled;
+    Thread reader;
+    Chunk current = null;
+    int pos = 0;
+    boolean closed = false;
+
+    /**
+     * constructor with DEFAULT_BUFFERS buffers of DEFAULT_BUFFER_SIZE
+     * @param in stream to read, closed with this stream
+     */
+    public ReadAheadInputStream(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+    }
+
+    /**
+     * constructor
+     * @param in stream to read, closed with this stream
+     * @param bufferSize bytes per buffer
+     * @param buffers buffers in use, at least 2
+     */
+    public ReadAheadInputStream(InputStream in, int bufferSize, int buffers) {
+        if (bufferSize < 1 || buffers < 2) {
+            throw new IllegalArgumentException("read ahead buffers: " + buffers + " x " + bufferSize);
+        }
+        this.in = in;
+        free = new ArrayBlockingQueue<Chunk>(buffers);
+        filled = new ArrayBlockingQueue<Chunk>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            free.add(new Chunk(bufferSize));
+        }
+        reader = new Thread(new Reader(), "read-ahead");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensure()) {
+            return -1;
+        }
+        return current.data[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensure()) {
+            return -1;
+        }
+        len = Math.min(len, current.len - pos);
+        System.arraycopy(current.data, pos, b, off, len);
+        pos += len;
+        return len;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null ? 0 : current.len - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        reader.interrupt();
+        try {
+            reader.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        in.close();
+    }
+
+    /*
+     * make the current chunk have unread bytes, taking the next one
+     * @return false at end of input
+     */
+    private boolean ensure() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (current == null || pos == current.len) {
+            if (current != null) {
+                if (current.last) {
+                    return false;
+                }
+                free.add(current);
+            }
+            try {
+                current = filled.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for input");
+            }
+            pos = 0;
+            if (current.error != null) {
+                throw current.error;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,1120 @@
+package Compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import Compression.Compressors.Codec;
+
+/**
+ * in-JVM round trip and throughput harness: every codec compresses and
+ * decompresses generated inputs of several classes, the output must match
+ * byte for byte, and ratio and MB/s are reported per codec and input
+ *
+ * every fuzz round also decompresses damaged copies of each codec's
+ * output, which must fail with an IOException if they fail at all; every
+ * codec also goes through CompressingOutputStream and
+ * DecompressingInputStream
+ *
+ * -block adds every codec in a block container and checks random range
+ * reads of the containers, that their checksums catch damage, and
+ * BatchCompress verifying files and redoing failed ones; -bytes adds
+ * every codec through ByteCodec, whose instances are reused from one round
+ * trip to the next, and checks it from several threads at once
+ *
+ * usage: RoundTripTest [-codecs Huffman,LZSS,...] [-block] [-bytes] [-size bytes]
+ *                      [-repeat n] [-fuzz rounds] [-large bytes]
+ *                      [-seed n] [files ...]
+ * @author Hang Yuan
+ */
+public class RoundTripTest {
+
+    static final String[] INPUTS = {
+        "empty", "single", "constant", "random", "skewed", "runs", "text", "records"
+    };
+
+    static final int CHUNK_SIZE = 1 << 16;
+    static final int THREADS = 4;
+
+    List<String> codecs = new ArrayList<String>();
+    List<String> files = new ArrayList<String>();
+    int size = 1 << 22;
+    int repeat = 3;
+    int fuzzRounds = 200;
+    long largeSize = 0;
+    long seed = 1;
+    boolean block = false;
+    boolean bytes = false;
+    int failures = 0;
+
+    /**
+     * result of one round trip
+     */
+    class Result {
+        long rawSize;
+        long compSize;
+        long compressNanos = Long.MAX_VALUE;
+        long decompressNanos = Long.MAX_VALUE;
+        boolean ok = true;
+    }
+
+    /**
+     * generated stream of any length: 64 KiB chunks of randomly chosen
+     * input classes, with a CRC of everything handed out
+     */
+    class SyntheticInputStream extends InputStream {
+        long remaining;
+        Random random;
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[0];
+        int pos = 0;
+
+        public SyntheticInputStream(long size, long seed) {
+            this.remaining = size;
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos == chunk.length) {
+                if (remaining == 0) {
+                    return -1;
+                }
+                // skip the degenerate classes, they say nothing about streaming
+                String kind = INPUTS[2 + random.nextInt(INPUTS.length - 2)];
+                chunk = generate(kind, (int)Math.min(CHUNK_SIZE, remaining), random);
+                remaining -= chunk.length;
+                pos = 0;
+            }
+            len = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, len);
+            crc.update(b, off, len);
+            pos += len;
+            return len;
+        }
+    }
+
+    /**
+     * OutputStream keeping only the count and CRC of what is written
+     */
+    class DigestOutputStream extends OutputStream {
+        long count = 0;
+        CRC32 crc = new CRC32();
+
+        @Override
+        public void write(int b) {
+            crc.update(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            crc.update(b, off, len);
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        RoundTripTest test = new RoundTripTest();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-codecs")) {
+                test.codecs.addAll(Arrays.asList(args[++i].split(",")));
+            }
+            else if (args[i].equals("-block")) {
+                test.block = true;
+            }
+            else if (args[i].equals("-bytes")) {
+                test.bytes = true;
+            }
+            else if (args[i].equals("-size")) {
+                test.size = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-repeat")) {
+                test.repeat = Math.max(1, Integer.parseInt(args[++i]));
+            }
+            else if (args[i].equals("-fuzz")) {
+                test.fuzzRounds = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-large")) {
+                test.largeSize = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("-seed")) {
+                test.seed = Long.parseLong(args[++i]);
+            }
+            else {
+                test.files.add(args[i]);
+            }
+        }
+        if (test.codecs.isEmpty()) {
+            for (Codec codec: Codec.values()) {
+                test.codecs.add(codec.name());
+            }
+        }
+        int n = test.codecs.size();
+        if (test.block) {
+            for (int i = 0; i < n; i++) {
+                // Auto is a block container already
+                if (!test.codecs.get(i).equals("Auto")) {
+                    test.codecs.add("Block:" + test.codecs.get(i));
+                }
+            }
+        }
+        if (test.bytes) {
+            for (int i = 0; i < n; i++) {
+                test.codecs.add("Bytes:" + test.codecs.get(i));
+            }
+        }
+
+        test.run();
+        System.exit(test.failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * run every check selected on the command line
+     */
+    public void run() throws IOException {
+        System.out.println(String.format("%-14s %-18s %12s %12s %8s %9s %9s",
+                           "input", "codec", "size", "compressed", "ratio", "comp MB/s", "dec MB/s"));
+        Random random = new Random(seed);
+        for (String kind: INPUTS) {
+            byte[] data = generate(kind, size, random);
+            for (String codec: codecs) {
+                report(kind, codec, roundTrip(codec, data, repeat));
+            }
+        }
+        for (String fileName: files) {
+            byte[] data = Files.readAllBytes(Paths.get(fileName));
+            String name = new File(fileName).getName();
+            for (String codec: codecs) {
+                report(name, codec, roundTrip(codec, data, repeat));
+            }
+        }
+        if (fuzzRounds > 0) {
+            fuzz();
+            corrupt();
+        }
+        streams();
+        if (block) {
+            seek();
+            checksums();
+            batch();
+        }
+        if (bytes) {
+            threads();
+        }
+        if (largeSize > 0) {
+            for (String codec: codecs) {
+                // ByteCodec holds everything in arrays
+                if (!codec.startsWith("Bytes:")) {
+                    report("synthetic", codec, largeRoundTrip(codec));
+                }
+            }
+        }
+        System.out.println(failures == 0 ? "ALL PASSED" : failures + " FAILED");
+    }
+
+    /**
+     * many small inputs of random class and size, failures report the
+     * seed that reproduces them
+     */
+    void fuzz() throws IOException {
+        int fuzzFailures = 0;
+        for (int round = 0; round < fuzzRounds; round++) {
+            Random random = new Random(seed + round);
+            String kind = INPUTS[random.nextInt(INPUTS.length)];
+            byte[] data = generate(kind, random.nextInt(1 << random.nextInt(18)), random);
+            for (String codec: codecs) {
+                if (!roundTrip(codec, data, 1).ok) {
+                    System.out.println("FAIL fuzz: codec " + codec + " seed " + (seed + round) +
+                                       " " + kind + " " + data.length + " bytes");
+                    fuzzFailures++;
+                }
+            }
+        }
+        failures += fuzzFailures;
+        System.out.println("fuzz: " + fuzzRounds + " rounds x " + codecs.size() + " codecs, " +
+                           fuzzFailures + " failures");
+    }
+
+    /**
+     * decompress damaged copies of every codec's output: bytes flipped,
+     * cut short or both. Corruption need not be detected, but the only
+     * failure allowed is an IOException
+     */
+    void corrupt() throws IOException {
+        int corruptFailures = 0;
+        for (int round = 0; round < fuzzRounds; round++) {
+            Random random = new Random(seed + round);
+            String kind = INPUTS[2 + random.nextInt(INPUTS.length - 2)];
+            byte[] data = generate(kind, 1 + random.nextInt(1 << 14), random);
+            for (String codec: codecs) {
+                byte[] damaged = damage(compress(codec, data), random);
+                try {
+                    decompress(codec, damaged);
+                }
+                catch (IOException e) {
+                    // detected
+                }
+                catch (RuntimeException e) {
+                    System.out.println("FAIL corrupt: codec " + codec + " seed " + (seed + round) +
+                                       " " + e);
+                    corruptFailures++;
+                }
+            }
+        }
+        failures += corruptFailures;
+        System.out.println("corrupt: " + fuzzRounds + " rounds x " + codecs.size() + " codecs, " +
+                           corruptFailures + " failures");
+    }
+
+    /**
+     * every codec through CompressingOutputStream and
+     * DecompressingInputStream, written and read in pieces of random size
+     */
+    void streams() throws IOException {
+        int streamFailures = 0;
+        int tested = 0;
+        Random random = new Random(seed);
+        byte[] data = AbstractCompressor.readFully(new SyntheticInputStream(1 << 20, seed));
+        for (String codec: codecs) {
+            if (codec.startsWith("Bytes:")) {
+                continue;
+            }
+            tested++;
+            String problem;
+            try {
+                problem = streamProblem(codec, data, random);
+            }
+            catch (IOException e) {
+                problem = e.toString();
+            }
+            catch (RuntimeException e) {
+                problem = e.toString();
+            }
+            if (problem != null) {
+                System.out.println("FAIL streams: codec " + codec + " " + problem);
+                streamFailures++;
+            }
+        }
+        failures += streamFailures;
+        System.out.println("streams: " + tested + " codecs, " + streamFailures + " failures");
+    }
+
+    /**
+     * the output written through CompressingOutputStream, with flushes in
+     * between, must equal compress(), and read back through
+     * DecompressingInputStream must equal data; closing a stream read
+     * half way must stop its decoder, and damaged data must fail with an
+     * IOException rather than hang
+     * @return what went wrong, null if nothing
+     */
+    static String streamProblem(String codec, byte[] data, Random random) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream outs = new CompressingOutputStream(compressed, newCompressor(codec));
+        for (int pos = 0; pos < data.length; ) {
+            int n = Math.min(data.length - pos, random.nextInt(1 << (1 + random.nextInt(17))));
+            if (n == 1) {
+                outs.write(data[pos]);
+            }
+            else {
+                outs.write(data, pos, n);
+            }
+            pos += n;
+            if (random.nextInt(16) == 0) {
+                outs.flush();
+            }
+        }
+        outs.close();
+        byte[] container = compressed.toByteArray();
+        if (!Arrays.equals(container, compress(codec, data))) {
+            return "output differs from compress()";
+        }
+
+        InputStream ins = new DecompressingInputStream(new ByteArrayInputStream(container),
+                                                       newCompressor(codec));
+        ByteArrayOutputStream restored = new ByteArrayOutputStream(data.length);
+        byte[] buf = new byte[1 << 17];
+        while (true) {
+            int n = ins.read(buf, 0, 1 + random.nextInt(buf.length));
+            if (n < 0) {
+                break;
+            }
+            restored.write(buf, 0, n);
+            int b = ins.read();
+            if (b >= 0) {
+                restored.write(b);
+            }
+        }
+        ins.close();
+        if (!Arrays.equals(restored.toByteArray(), data)) {
+            return "round trip differs";
+        }
+
+        ins = new DecompressingInputStream(new ByteArrayInputStream(container), newCompressor(codec));
+        ins.read(buf, 0, 1);
+        ins.close();
+
+        ins = new DecompressingInputStream(new ByteArrayInputStream(damage(container, random)),
+                                           newCompressor(codec));
+        try {
+            while (ins.read(buf) >= 0) {
+            }
+        }
+        catch (IOException e) {
+            // detected
+        }
+        finally {
+            ins.close();
+        }
+        return null;
+    }
+
+    /**
+     * copy of data with 1 to 4 bytes flipped, cut short, or both
+     */
+    static byte[] damage(byte[] data, Random random) {
+        int mode = random.nextInt(3);
+        byte[] damaged = mode == 1 ? Arrays.copyOf(data, random.nextInt(data.length))
+                                   : data.clone();
+        if (mode != 1) {
+            for (int i = 1 + random.nextInt(4); i > 0 && damaged.length > 0; i--) {
+                damaged[random.nextInt(damaged.length)] ^= 1 + random.nextInt(255);
+            }
+        }
+        if (mode == 2) {
+            damaged = Arrays.copyOf(damaged, random.nextInt(damaged.length + 1));
+        }
+        return damaged;
+    }
+
+    /**
+     * compress data in memory with a codec named as on the command line
+     */
+    static byte[] compress(String codec, byte[] data) throws IOException {
+        if (codec.startsWith("Bytes:")) {
+            return ByteCodec.forCodec(Codec.valueOf(codec.substring(6))).compress(data);
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+        newCompressor(codec).compress(new ByteArrayInputStream(data), compressed);
+        return compressed.toByteArray();
+    }
+
+    /**
+     * decompress data in memory with a codec named as on the command line
+     */
+    static byte[] decompress(String codec, byte[] data) throws IOException {
+        if (codec.startsWith("Bytes:")) {
+            return ByteCodec.forCodec(Codec.valueOf(codec.substring(6))).decompress(data);
+        }
+        ByteArrayOutputStream restored = new ByteArrayOutputStream(data.length * 2 + 64);
+        newCompressor(codec).decompress(new ByteArrayInputStream(data), restored);
+        return restored.toByteArray();
+    }
+
+    /**
+     * random range reads of every block container through
+     * SeekableDecompressor, compared with slices of the original: ranges
+     * within and across frames, the first and the last byte, reads past
+     * the end; damaged seek tables must be rejected
+     */
+    void seek() throws IOException {
+        int seekFailures = 0;
+        int containers = 0;
+        int blockSize = BlockCompressor.MIN_BLOCK_SIZE;
+        Random random = new Random(seed);
+        byte[] data = generate("text", 20 * blockSize + 123, random);
+        long[][] ranges = {
+            {0, 0}, {0, 1}, {0, blockSize}, {0, data.length},
+            {blockSize - 10, 20}, {blockSize, blockSize}, {3 * blockSize - 1, 2 * blockSize + 2},
+            {data.length - 1, 1}, {data.length - 1, 100}, {data.length - 200, 200},
+            {data.length, 10}, {data.length + 1000, 10}
+        };
+        for (String codec: codecs) {
+            if (!codec.startsWith("Block:") && !codec.equals("Auto")) {
+                continue;
+            }
+            containers++;
+            File tmp = File.createTempFile("seek", ".blk");
+            try {
+                BlockCompressor compressor = (BlockCompressor)newCompressor(codec);
+                compressor.setBlockSize(blockSize);
+                OutputStream outs = new FileOutputStream(tmp);
+                try {
+                    compressor.compress(new ByteArrayInputStream(data), outs);
+                }
+                finally {
+                    outs.close();
+                }
+
+                SeekableDecompressor reader = new SeekableDecompressor(tmp.getPath());
+                try {
+                    List<String> wrong = new ArrayList<String>();
+                    if (reader.size() != data.length) {
+                        wrong.add("size " + reader.size());
+                    }
+                    for (long[] range: ranges) {
+                        if (!rangeMatches(reader, data, range[0], (int)range[1])) {
+                            wrong.add(range[0] + "+" + range[1]);
+                        }
+                    }
+                    for (int i = 0; i < 100; i++) {
+                        long offset = random.nextInt(data.length + 16);
+                        int length = random.nextInt(random.nextBoolean() ? 64 : 3 * blockSize);
+                        if (!rangeMatches(reader, data, offset, length)) {
+                            wrong.add(offset + "+" + length);
+                        }
+                    }
+                    if (reader.read(data.length, new byte[8], 0, 8) != -1) {
+                        wrong.add("read at end");
+                    }
+                    if (!wrong.isEmpty()) {
+                        System.out.println("FAIL seek: codec " + codec + " ranges " + wrong);
+                        seekFailures++;
+                    }
+                }
+                finally {
+                    reader.close();
+                }
+                List<String> accepted = acceptedSeekTables(Files.readAllBytes(tmp.toPath()), tmp);
+                if (!accepted.isEmpty()) {
+                    System.out.println("FAIL seek: codec " + codec + " accepted " + accepted);
+                    seekFailures++;
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                System.out.println("FAIL seek: codec " + codec);
+                seekFailures++;
+            }
+            finally {
+                tmp.delete();
+            }
+        }
+        failures += seekFailures;
+        System.out.println("seek: " + containers + " containers x " + (ranges.length + 100) +
+                           " ranges, " + seekFailures + " failures");
+    }
+
+    /**
+     * damaged block containers must fail with an IOException: a bit of a
+     * payload or of a frame checksum flipped is a checksum mismatch when
+     * decompressing and verifying, and for random access reads; a cut
+     * short container fails too
+     */
+    void checksums() throws IOException {
+        int checksumFailures = 0;
+        int containers = 0;
+        Random random = new Random(seed);
+        byte[] data = generate("text", 5 * BlockCompressor.MIN_BLOCK_SIZE + 77, random);
+        for (String codec: codecs) {
+            if (!codec.startsWith("Block:") && !codec.equals("Auto")) {
+                continue;
+            }
+            containers++;
+            List<String> wrong = new ArrayList<String>();
+            try {
+                BlockCompressor compressor = (BlockCompressor)newCompressor(codec);
+                compressor.setBlockSize(BlockCompressor.MIN_BLOCK_SIZE);
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                compressor.compress(new ByteArrayInputStream(data), compressed);
+                byte[] good = compressed.toByteArray();
+
+                byte[] bad = good.clone();
+                bad[lastPayloadByte(good)] ^= 0x10;
+                expectChecksumError(wrong, "payload", bad, true);
+
+                // frame 0 header: original size, compressed size, original CRC, compressed CRC
+                bad = good.clone();
+                bad[BlockCompressor.HEADER_SIZE + 8] ^= 1;
+                expectChecksumError(wrong, "original checksum", bad, false);
+                bad = good.clone();
+                bad[BlockCompressor.HEADER_SIZE + 12] ^= 1;
+                expectChecksumError(wrong, "compressed checksum", bad, true);
+
+                for (int i = 0; i < 10; i++) {
+                    bad = Arrays.copyOf(good, random.nextInt(good.length));
+                    if (decompressFails(bad) == null || verifyFails(bad) == null) {
+                        wrong.add("cut to " + bad.length + " bytes");
+                    }
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                wrong.add(e.toString());
+            }
+            if (!wrong.isEmpty()) {
+                System.out.println("FAIL checksums: codec " + codec + " " + wrong);
+                checksumFailures++;
+            }
+        }
+        failures += checksumFailures;
+        System.out.println("checksums: " + containers + " containers, " + checksumFailures + " failures");
+    }
+
+    /**
+     * a damaged container must be a checksum mismatch when decompressed,
+     * read at random and, if the damage is on the compressed side, verified
+     */
+    static void expectChecksumError(List<String> wrong, String what, byte[] bad, boolean compressedSide)
+                throws IOException
+    {
+        if (!isChecksumError(decompressFails(bad))) {
+            wrong.add(what + ": decompress");
+        }
+        if (compressedSide && !isChecksumError(verifyFails(bad))) {
+            wrong.add(what + ": verify");
+        }
+        File tmp = File.createTempFile("checksums", ".blk");
+        try {
+            Files.write(tmp.toPath(), bad);
+            SeekableDecompressor reader = new SeekableDecompressor(tmp.getPath());
+            try {
+                reader.readRange(0, (int)reader.size());
+                wrong.add(what + ": random access");
+            }
+            catch (IOException e) {
+                if (!isChecksumError(e)) {
+                    wrong.add(what + ": random access " + e.getMessage());
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        finally {
+            tmp.delete();
+        }
+    }
+
+    static boolean isChecksumError(IOException e) {
+        return e != null && e.getMessage() != null && e.getMessage().startsWith("Checksum mismatch");
+    }
+
+    /**
+     * the IOException decompressing a container throws, null if none
+     */
+    static IOException decompressFails(byte[] container) {
+        try {
+            new BlockCompressor(Codec.Auto).decompress(new ByteArrayInputStream(container),
+                                                       new ByteArrayOutputStream());
+            return null;
+        }
+        catch (IOException e) {
+            return e;
+        }
+    }
+
+    /**
+     * the IOException verifying a container throws, null if none
+     */
+    static IOException verifyFails(byte[] container) {
+        try {
+            new BlockCompressor(Codec.Auto).verify(new ByteArrayInputStream(container));
+            return null;
+        }
+        catch (IOException e) {
+            return e;
+        }
+    }
+
+    /**
+     * BatchCompress in a temporary directory: -verify fails a damaged
+     * container and passes it once repaired; a file whose decompressing
+     * fails halfway leaves no output behind, so the next run redoes it
+     * rather than taking the truncated output for up to date
+     */
+    void batch() throws IOException {
+        List<String> wrong = new ArrayList<String>();
+        File dir = Files.createTempDirectory("batch").toFile();
+        try {
+            byte[] data = generate("text", 3 * BlockCompressor.DEFAULT_BLOCK_SIZE + 123, new Random(seed));
+            File file = new File(dir, "data");
+            File container = new File(dir, "data." + Codec.Auto.postFix());
+            File output = new File(dir, "data.out");
+            Files.write(file.toPath(), data);
+            runBatch(dir, false, false);
+            byte[] good = Files.readAllBytes(container.toPath());
+
+            // the blocks before the damaged last one are written before it fails
+            byte[] bad = good.clone();
+            bad[lastPayloadByte(good)] ^= 1;
+            long past = container.lastModified() - 60000;
+            Files.write(container.toPath(), bad);
+            container.setLastModified(past);
+            if (runBatch(dir, false, true).failed.get() != 1) {
+                wrong.add("damaged file verified");
+            }
+            BatchCompress failing = runBatch(dir, true, false);
+            if (failing.failed.get() != 1) {
+                wrong.add("damaged file not failed");
+            }
+            if (output.exists() || AbstractCompressor.partialFile(output.getPath()).exists()) {
+                wrong.add("output of failed file left behind");
+            }
+
+            Files.write(container.toPath(), good);
+            container.setLastModified(past);
+            if (runBatch(dir, false, true).done.get() != 1) {
+                wrong.add("good file not verified");
+            }
+            BatchCompress retry = runBatch(dir, true, false);
+            if (retry.done.get() != 1 || retry.skipped.get() != 0) {
+                wrong.add("failed file not redone");
+            }
+            else if (!Arrays.equals(data, Files.readAllBytes(output.toPath()))) {
+                wrong.add("redone output differs");
+            }
+            if (runBatch(dir, true, false).skipped.get() != 1) {
+                wrong.add("redone output not up to date");
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            wrong.add(e.toString());
+        }
+        finally {
+            deleteAll(dir);
+        }
+        failures += wrong.size();
+        System.out.println("batch: " + wrong.size() + " failures" + (wrong.isEmpty() ? "" : " " + wrong));
+    }
+
+    /**
+     * run BatchCompress with the default codec over a directory
+     */
+    static BatchCompress runBatch(File dir, boolean decompress, boolean verify) throws IOException {
+        BatchCompress batch = new BatchCompress();
+        batch.decompress = decompress || verify;
+        batch.verify = verify;
+        batch.threads = 2;
+        batch.add(dir);
+        try {
+            batch.run();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted running batch");
+        }
+        return batch;
+    }
+
+    /**
+     * offset of the last payload byte of a block container's last frame
+     */
+    static int lastPayloadByte(byte[] container) {
+        int frames = ByteBuffer.wrap(container).getInt(container.length - 8);
+        return container.length - BlockCompressor.FOOTER_SIZE
+               - frames * BlockCompressor.INDEX_ENTRY_SIZE - 4 - 1;
+    }
+
+    static void deleteAll(File dir) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                child.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * damage the seek table of a container of at least 3 blocks in ways
+     * the footer does not show: a first block not at 0, blocks out of
+     * order or past the end, frames inside the header, out of order or
+     * past the table. Each must fail with an IOException when opened or
+     * read, the file is overwritten
+     * @return the damage that was not rejected
+     */
+    static List<String> acceptedSeekTables(byte[] container, File file) throws IOException {
+        ByteBuffer footer = ByteBuffer.wrap(container, container.length - BlockCompressor.FOOTER_SIZE,
+                                            BlockCompressor.FOOTER_SIZE);
+        long size = footer.getLong();
+        int index = (int)footer.getLong();
+        int entry = BlockCompressor.INDEX_ENTRY_SIZE;
+        ByteBuffer table = ByteBuffer.wrap(container);
+        // entry, field (0 raw offset, 8 frame offset), value
+        long[][] edits = {
+            {0, 0, 1},
+            {1, 0, table.getLong(index + 2 * entry)},
+            {2, 0, table.getLong(index + entry) - 1},
+            {2, 0, size},
+            {0, 8, 0},
+            {1, 8, table.getLong(index + 2 * entry + 8)},
+            {1, 8, container.length}
+        };
+        List<String> accepted = new ArrayList<String>();
+        for (long[] edit: edits) {
+            byte[] bad = container.clone();
+            ByteBuffer.wrap(bad).putLong(index + (int)edit[0] * entry + (int)edit[1], edit[2]);
+            Files.write(file.toPath(), bad);
+            String what = "seek table entry " + edit[0] + (edit[1] == 0 ? " raw " : " frame ") + edit[2];
+            try {
+                SeekableDecompressor reader = new SeekableDecompressor(file.getPath());
+                try {
+                    reader.readRange(0, (int)size);
+                }
+                finally {
+                    reader.close();
+                }
+                accepted.add(what);
+            }
+            catch (IOException e) {
+                // rejected
+            }
+            catch (RuntimeException e) {
+                accepted.add(what + " " + e);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * whether readRange(offset, length) returns the matching slice of data,
+     * cut at the end of data
+     */
+    static boolean rangeMatches(SeekableDecompressor reader, byte[] data, long offset, int length)
+                throws IOException
+    {
+        int from = (int)Math.min(offset, data.length);
+        int to = (int)Math.min(offset + length, data.length);
+        return Arrays.equals(reader.readRange(offset, length), Arrays.copyOfRange(data, from, to));
+    }
+
+    /**
+     * ByteCodec from THREADS threads of a fixed pool at once: every thread
+     * codes the same payloads of mixed classes and sizes in an order of
+     * its own, and every output must equal the single-threaded one, so
+     * state shared between threads shows up as a mismatch
+     */
+    void threads() throws IOException {
+        int threadFailures = 0;
+        int tested = 0;
+        Random random = new Random(seed);
+        final byte[][] payloads = new byte[48][];
+        for (int i = 0; i < payloads.length; i++) {
+            String kind = INPUTS[random.nextInt(INPUTS.length)];
+            payloads[i] = generate(kind, random.nextInt(1 << random.nextInt(19)), random);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (String codec: codecs) {
+                if (!codec.startsWith("Bytes:")) {
+                    continue;
+                }
+                tested++;
+                final ByteCodec bytes = ByteCodec.forCodec(Codec.valueOf(codec.substring(6)));
+                final byte[][] expected = new byte[payloads.length][];
+                for (int i = 0; i < payloads.length; i++) {
+                    expected[i] = bytes.compress(payloads[i]);
+                }
+                List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+                for (int t = 0; t < THREADS; t++) {
+                    final Random order = new Random(seed + t);
+                    futures.add(pool.submit(new Callable<Integer>() {
+                        public Integer call() throws IOException {
+                            return mismatches(bytes, payloads, expected, order);
+                        }
+                    }));
+                }
+                int wrong = 0;
+                for (Future<Integer> future: futures) {
+                    try {
+                        wrong += future.get();
+                    }
+                    catch (ExecutionException e) {
+                        e.getCause().printStackTrace();
+                        wrong++;
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for threads");
+                    }
+                }
+                if (wrong > 0) {
+                    System.out.println("FAIL threads: codec " + codec + " " + wrong + " mismatches");
+                    threadFailures++;
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        failures += threadFailures;
+        System.out.println("threads: " + tested + " codecs x " + THREADS + " threads, " +
+                           threadFailures + " failures");
+    }
+
+    /**
+     * code payloads in a random order, each compressed into a reused
+     * array and compared with its expected output, then decompressed
+     * @return round trips that did not match
+     */
+    static int mismatches(ByteCodec bytes, byte[][] payloads, byte[][] expected, Random order)
+                throws IOException
+    {
+        int wrong = 0;
+        byte[] dst = new byte[0];
+        for (int round = 0; round < 3 * payloads.length; round++) {
+            int i = order.nextInt(payloads.length);
+            int max = bytes.maxCompressedLength(payloads[i].length);
+            if (dst.length < max) {
+                dst = new byte[max];
+            }
+            int size = bytes.compress(payloads[i], 0, payloads[i].length, dst, 0);
+            if (!Arrays.equals(expected[i], Arrays.copyOf(dst, size))
+                || !Arrays.equals(payloads[i], bytes.decompress(dst, 0, size)))
+            {
+                wrong++;
+            }
+        }
+        return wrong;
+    }
+
+    /**
+     * compress and decompress data in memory, timings are the best of repeat runs
+     */
+    Result roundTrip(String codec, byte[] data, int repeat) throws IOException {
+        if (codec.startsWith("Bytes:")) {
+            return bytesRoundTrip(ByteCodec.forCodec(Codec.valueOf(codec.substring(6))), data, repeat);
+        }
+        Result result = new Result();
+        result.rawSize = data.length;
+        for (int i = 0; i < repeat; i++) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+            long start = System.nanoTime();
+            try {
+                newCompressor(codec).compress(new ByteArrayInputStream(data), compressed);
+            }
+            catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                result.ok = false;
+                return result;
+            }
+            long mid = System.nanoTime();
+
+            ByteArrayOutputStream restored = new ByteArrayOutputStream(data.length + 64);
+            try {
+                newCompressor(codec).decompress(new ByteArrayInputStream(compressed.toByteArray()), restored);
+            }
+            catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                result.ok = false;
+                return result;
+            }
+            long end = System.nanoTime();
+
+            result.compSize = compressed.size();
+            result.compressNanos = Math.min(result.compressNanos, mid - start);
+            result.decompressNanos = Math.min(result.decompressNanos, end - mid);
+            if (!Arrays.equals(data, restored.toByteArray())) {
+                result.ok = false;
+                return result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * compress into an array of maxCompressedLength bytes and decompress
+     * into a new array, timings are the best of repeat runs
+     */
+    Result bytesRoundTrip(ByteCodec codec, byte[] data, int repeat) {
+        Result result = new Result();
+        result.rawSize = data.length;
+        for (int i = 0; i < repeat; i++) {
+            try {
+                byte[] compressed = new byte[codec.maxCompressedLength(data.length)];
+                long start = System.nanoTime();
+                int size = codec.compress(data, 0, data.length, compressed, 0);
+                long mid = System.nanoTime();
+                byte[] restored = codec.decompress(compressed, 0, size);
+                long end = System.nanoTime();
+
+                result.compSize = size;
+                result.compressNanos = Math.min(result.compressNanos, mid - start);
+                result.decompressNanos = Math.min(result.decompressNanos, end - mid);
+                if (!Arrays.equals(data, restored)) {
+                    result.ok = false;
+                    return result;
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                result.ok = false;
+                return result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * stream largeSize generated bytes through a temporary file, checked
+     * by length and CRC so memory use does not depend on the size; the
+     * compress rate includes generating the input
+     */
+    Result largeRoundTrip(String codec) throws IOException {
+        Result result = new Result();
+        result.rawSize = largeSize;
+        File tmp = File.createTempFile("roundtrip", "." + codec.replace(':', '-'));
+        try {
+            SyntheticInputStream ins = new SyntheticInputStream(largeSize, seed);
+            OutputStream outs = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16);
+            long start = System.nanoTime();
+            newCompressor(codec).compress(ins, outs);
+            outs.close();
+            long mid = System.nanoTime();
+
+            DigestOutputStream digest = new DigestOutputStream();
+            InputStream cins = new BufferedInputStream(new FileInputStream(tmp), 1 << 16);
+            newCompressor(codec).decompress(cins, digest);
+            cins.close();
+            long end = System.nanoTime();
+
+            result.compSize = tmp.length();
+            result.compressNanos = mid - start;
+            result.decompressNanos = end - mid;
+            result.ok = digest.count == largeSize && digest.crc.getValue() == ins.crc.getValue();
+        }
+        catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            result.ok = false;
+        }
+        finally {
+            tmp.delete();
+        }
+        return result;
+    }
+
+    void report(String input, String codec, Result result) {
+        if (!result.ok) {
+            failures++;
+            System.out.println(String.format("%-14s %-18s %12d %12s FAIL", input, codec, result.rawSize, "-"));
+            return;
+        }
+        double ratio = result.rawSize == 0 ? 0 : 100.0 * result.compSize / result.rawSize;
+        System.out.println(String.format("%-14s %-18s %12d %12d %7.2f%% %9.1f %9.1f",
+                           input, codec, result.rawSize, result.compSize, ratio,
+                           mbPerSecond(result.rawSize, result.compressNanos),
+                           mbPerSecond(result.rawSize, result.decompressNanos)));
+    }
+
+    static double mbPerSecond(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : bytes * 1000.0 / nanos;
+    }
+
+    /**
+     * codec name, "Block:" prefixed for the block container
+     */
+    static CompressService newCompressor(String codec) {
+        if (codec.startsWith("Block:")) {
+            return Compressors.newBlockCompressor(Codec.valueOf(codec.substring(6)));
+        }
+        return Compressors.newCompressor(Codec.valueOf(codec));
+    }
+
+    /**
+     * generate n bytes of an input class
+     */
+    static byte[] generate(String kind, int n, Random random) {
+        byte[] data;
+        if (kind.equals("empty")) {
+            return new byte[0];
+        }
+        else if (kind.equals("single")) {
+            data = new byte[1];
+            random.nextBytes(data);
+        }
+        else if (kind.equals("constant")) {
+            data = new byte[n];
+            Arrays.fill(data, (byte)random.nextInt(256));
+        }
+        else if (kind.equals("random")) {
+            data = new byte[n];
+            random.nextBytes(data);
+        }
+        else if (kind.equals("skewed")) {
+            // geometric-like byte distribution, mostly small values
+            data = new byte[n];
+            for (int i = 0; i < n; i++) {
+                data[i] = (byte)Math.min(255, (int)(-Math.log(1 - random.nextDouble()) * 12));
+            }
+        }
+        else if (kind.equals("runs")) {
+            data = new byte[n];
+            for (int i = 0; i < n; ) {
+                int len = Math.min(n - i, 1 + random.nextInt(1 << random.nextInt(13)));
+                Arrays.fill(data, i, i + len, (byte)random.nextInt(256));
+                i += len;
+            }
+        }
+        else if (kind.equals("text")) {
+            // words of a small vocabulary, a few of them very frequent
+            String[] words = new String[512];
+            for (int w = 0; w < words.length; w++) {
+                char[] word = new char[2 + random.nextInt(8)];
+                for (int c = 0; c < word.length; c++) {
+                    word[c] = (char)('a' + random.nextInt(26));
+                }
+                words[w] = new String(word);
+            }
+            data = new byte[n];
+            int i = 0;
+            while (i < n) {
+                double u = random.nextDouble();
+                String word = words[(int)(words.length * u * u * u)];
+                for (int c = 0; c < word.length() && i < n; c++) {
+                    data[i++] = (byte)word.charAt(c);
+                }
+                if (i < n) {
+                    data[i++] = (byte)(random.nextInt(12) == 0 ? '\n' : ' ');
+                }
+            }
+        }
+        else if (kind.equals("records")) {
+            // 16 byte binary records: sequence number, timestamp, small fields
+            data = new byte[n];
+            long time = random.nextInt();
+            for (int i = 0, seq = 0; i < n; seq++) {
+                time += random.nextInt(100);
+                long a = ((long)seq << 32) | (time & 0xFFFFFFFFL);
+                long b = ((long)random.nextInt(16) << 32) | random.nextInt(1000);
+                for (int k = 0; k < 16 && i < n; k++, i++) {
+                    data[i] = (byte)(k < 8 ? a >>> (k * 8) : b >>> ((k - 8) * 8));
+                }
+            }
+        }
+        else {
+            throw new IllegalArgumentException("unknown input class: " + kind);
+        }
+        return data;
+    }
+}
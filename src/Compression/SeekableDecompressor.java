@@ -0,0 +1,276 @@
+package Compression;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import Compression.Compressors.Codec;
+
+/**
+ * random access reader for block containers written by BlockCompressor:
+ * loads the seek table from the footer and decompresses only the blocks
+ * covering a requested range, keeping the most recent blocks cached
+ * @author Hang Yuan
+ */
+public class SeekableDecompressor implements Closeable {
+
+    public static final int DEFAULT_CACHED_BLOCKS = 4;
+
+    SeekableByteChannel channel;
+    Codec codec;
+    int version;
+    long size;          // original size
+    long[] rawOffsets;  // original offset of each block
+    long[] frameOffsets; // container offset of each frame
+    int count;
+    Map<Integer, ByteBuffer> cache;
+
+    /**
+     * open a block container file
+     */
+    public SeekableDecompressor(String fileName) throws IOException {
+        this(FileChannel.open(Paths.get(fileName), StandardOpenOption.READ));
+    }
+
+    /**
+     * read a block container through a channel, the channel is closed
+     * together with this reader
+     */
+    public SeekableDecompressor(SeekableByteChannel channel) throws IOException {
+        this(channel, DEFAULT_CACHED_BLOCKS);
+    }
+
+    public SeekableDecompressor(SeekableByteChannel channel, final int cachedBlocks) 
+                throws IOException 
+    {
+        this.channel = channel;
+        this.cache = new LinkedHashMap<Integer, ByteBuffer>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, ByteBuffer> eldest) {
+                return size() > cachedBlocks;
+            }
+        };
+
+        ByteBuffer header = readAt(0, BlockCompressor.HEADER_SIZE);
+        codec = BlockCompressor.parseHeader(header);
+        version = header.get(4);
+
+        // footer and seek table
+        ByteBuffer footer = readAt(channel.size() - BlockCompressor.FOOTER_SIZE, 
+                                   BlockCompressor.FOOTER_SIZE);
+        size = footer.getLong();
+        long indexOffset = footer.getLong();
+        count = footer.getInt();
+        if (footer.getInt() != BlockCompressor.MAGIC || count < 0 || size < 0
+            || indexOffset < BlockCompressor.HEADER_SIZE
+            || count > (channel.size() - indexOffset) / BlockCompressor.INDEX_ENTRY_SIZE)
+        {
+            throw new IOException("Corrupted block container footer");
+        }
+        ByteBuffer index = readAt(indexOffset, count * BlockCompressor.INDEX_ENTRY_SIZE);
+        rawOffsets = new long[count];
+        frameOffsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            rawOffsets[i] = index.getLong();
+            frameOffsets[i] = index.getLong();
+        }
+        checkIndex(indexOffset);
+    }
+
+    /**
+     * original size of the compressed data
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * read up to length original bytes starting at offset
+     * @return bytes read, fewer than length only at the end of data
+     */
+    public byte[] readRange(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Negative offset or length");
+        }
+        int n = (int)Math.max(0, Math.min(length, size - offset));
+        byte[] dst = new byte[n];
+        read(offset, dst, 0, n);
+        return dst;
+    }
+
+    /**
+     * read original bytes starting at offset into dst
+     * @return bytes read, -1 if offset is at or past the end
+     */
+    public synchronized int read(long offset, byte[] dst, int off, int len) throws IOException {
+        if (offset >= size) {
+            return len == 0 ? 0 : -1;
+        }
+        int total = 0;
+        while (total < len && offset < size) {
+            int block = findBlock(offset);
+            ByteBuffer data = block(block);
+            int inBlock = (int)(offset - rawOffsets[block]);
+            int n = Math.min(len - total, data.remaining() - inBlock);
+            System.arraycopy(data.array(), data.arrayOffset() + data.position() + inBlock, 
+                             dst, off + total, n);
+            total += n;
+            offset += n;
+        }
+        return total;
+    }
+
+    /**
+     * read-only channel view of the original data, sharing this reader's cache
+     */
+    public SeekableByteChannel channel() {
+        return new SeekableByteChannel() {
+            long position = 0;
+            boolean open = true;
+
+            public int read(ByteBuffer dst) throws IOException {
+                ensureOpen();
+                int len = dst.remaining();
+                byte[] tmp = dst.hasArray() ? dst.array() : new byte[len];
+                int off = dst.hasArray() ? dst.arrayOffset() + dst.position() : 0;
+                int n = SeekableDecompressor.this.read(position, tmp, off, len);
+                if (n > 0) {
+                    if (dst.hasArray()) {
+                        dst.position(dst.position() + n);
+                    }
+                    else {
+                        dst.put(tmp, 0, n);
+                    }
+                    position += n;
+                }
+                return n;
+            }
+
+            public int write(ByteBuffer src) {
+                throw new NonWritableChannelException();
+            }
+
+            public long position() throws IOException {
+                ensureOpen();
+                return position;
+            }
+
+            public SeekableByteChannel position(long newPosition) throws IOException {
+                ensureOpen();
+                if (newPosition < 0) {
+                    throw new IllegalArgumentException("Negative position");
+                }
+                position = newPosition;
+                return this;
+            }
+
+            public long size() throws IOException {
+                ensureOpen();
+                return size;
+            }
+
+            public SeekableByteChannel truncate(long newSize) {
+                throw new NonWritableChannelException();
+            }
+
+            public boolean isOpen() {
+                return open;
+            }
+
+            public void close() {
+                open = false;
+            }
+
+            private void ensureOpen() throws IOException {
+                if (!open) {
+                    throw new ClosedChannelException();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /*
+     * the seek table must cover the data from offset 0 in blocks of at most
+     * MAX_BLOCK_SIZE, with frames in order between the header and the table
+     */
+    private void checkIndex(long indexOffset) throws IOException {
+        if (count == 0 ? size != 0 : rawOffsets[0] != 0) {
+            throw new IOException("Seek table does not start at offset 0");
+        }
+        int headerSize = BlockCompressor.frameHeaderSize(version);
+        for (int i = 0; i < count; i++) {
+            long end = i + 1 < count ? rawOffsets[i + 1] : size;
+            long frameEnd = i + 1 < count ? frameOffsets[i + 1] : indexOffset;
+            if (end <= rawOffsets[i] || end - rawOffsets[i] > BlockCompressor.MAX_BLOCK_SIZE
+                || frameOffsets[i] < BlockCompressor.HEADER_SIZE
+                || frameEnd - frameOffsets[i] < headerSize)
+            {
+                throw new IOException("Corrupted seek table entry " + i);
+            }
+        }
+    }
+
+    /*
+     * index of the block containing an original offset
+     */
+    private int findBlock(long offset) {
+        int i = Arrays.binarySearch(rawOffsets, 0, count, offset);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /*
+     * decompressed data of a block, from cache if possible
+     */
+    private ByteBuffer block(int block) throws IOException {
+        ByteBuffer data = cache.get(block);
+        if (data == null) {
+            long end = block + 1 < count ? rawOffsets[block + 1] : size;
+            int rawSize = (int)(end - rawOffsets[block]);
+            int headerSize = BlockCompressor.frameHeaderSize(version);
+            ByteBuffer frameHeader = readAt(frameOffsets[block], headerSize);
+            if (frameHeader.getInt() != rawSize) {
+                throw new IOException("Seek table does not match frame " + block);
+            }
+            int compSize = frameHeader.getInt();
+            BlockCompressor.checkFrame(rawSize, compSize);
+            ByteBuffer payload = readAt(frameOffsets[block] + headerSize, compSize);
+            if (version > 1) {
+                BlockCompressor.checkCrc(frameHeader.getInt(12), payload, "compressed block " + block);
+            }
+            data = BlockCompressor.decodeBlock(codec, payload, rawSize);
+            if (version > 1) {
+                BlockCompressor.checkCrc(frameHeader.getInt(8), data, "block " + block);
+            }
+            cache.put(block, data);
+        }
+        return data;
+    }
+
+    /*
+     * read len bytes of the container at a position
+     */
+    private ByteBuffer readAt(long position, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        channel.position(position);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) {
+                throw new EOFException("Unexpected end of block container");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+}
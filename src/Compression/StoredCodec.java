@@ -0,0 +1,126 @@
+package Compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import Compression.AbstractCompressor;
+
+/**
+ * Stored codec: copies the data as it is, for input that no model can
+ * shrink, e.g. media that is compressed already
+ * @author Hang Yuan
+ */
+public class StoredCodec extends AbstractCompressor {
+
+    static final int CHUNK_SIZE = 1 << 16;
+
+    // kept from one operation to the next
+    byte[] chunk = null;
+
+    /**
+     * constructor
+     * @param fileName file to be stored
+     */
+    public StoredCodec(String pathName) {
+        super(pathName, "raw");
+    }
+
+    /**
+     * constructor for stream compressing
+     */
+    public StoredCodec() {
+        super();
+    }
+
+    /**
+     * copy a stream in chunks
+     * | chunk size | chunk | chunk size | chunk | ... | 0 (4 bytes) |
+     * |  4 bytes   | ..... |
+     * @return stored size
+     */
+    @Override
+    protected long compressStream(InputStream ins, OutputStream outs) throws IOException {
+        long start = phaseStart();
+        byte[] buf = chunk();
+        long size = 0;
+        int n;
+        while ((n = HuffmanTree.readBlock(ins, buf)) > 0) {
+            size += writeChunk(buf, 0, n, outs);
+        }
+        size += writeChunk(buf, 0, 0, outs);
+        phaseDone(CodecMetrics.Phase.Encode, start);
+        return size;
+    }
+
+    /**
+     * store bytes in chunks
+     * | chunk size | chunk | chunk size | chunk | ... | 0 (4 bytes) |
+     * @return stored size
+     */
+    @Override
+    protected long encode(byte[] src, int off, int len, OutputStream outs)
+                throws IOException
+    {
+        long start = phaseStart();
+        long size = 0;
+        for (int pos = off; pos < off + len; pos += CHUNK_SIZE) {
+            size += writeChunk(src, pos, Math.min(CHUNK_SIZE, off + len - pos), outs);
+        }
+        size += writeChunk(src, off, 0, outs);
+        phaseDone(CodecMetrics.Phase.Encode, start);
+        return size;
+    }
+
+    /**
+     * copy the stored chunks out
+     * @return data size
+     */
+    @Override
+    protected long decode(InputStream ins, OutputStream outs) throws IOException {
+        long start = phaseStart();
+        byte[] buf = chunk();
+        long size = 0;
+        while (true) {
+            BlockCompressor.readExactly(ins, buf, 0, 4);
+            int n = ByteBuffer.wrap(buf).getInt();
+            if (n == 0) {
+                break;
+            }
+            if (n < 0 || n > CHUNK_SIZE) {
+                throw new IOException("Corrupted stored chunk size: " + n);
+            }
+            BlockCompressor.readExactly(ins, buf, 0, n);
+            outs.write(buf, 0, n);
+            size += n;
+        }
+        phaseDone(CodecMetrics.Phase.Decode, start);
+        return size;
+    }
+
+    /**
+     * largest encoded size, the data and the chunk headers
+     */
+    @Override
+    protected long maxEncodedLength(long len) {
+        return len + 4 * ((len + CHUNK_SIZE - 1) / CHUNK_SIZE) + 4;
+    }
+
+    private byte[] chunk() {
+        if (chunk == null) {
+            chunk = new byte[CHUNK_SIZE];
+        }
+        return chunk;
+    }
+
+    private static int writeChunk(byte[] src, int off, int len, OutputStream outs)
+                throws IOException
+    {
+        outs.write(len >>> 24);
+        outs.write(len >>> 16);
+        outs.write(len >>> 8);
+        outs.write(len);
+        outs.write(src, off, len);
+        return 4 + len;
+    }
+}
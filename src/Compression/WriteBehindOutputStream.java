@@ -0,0 +1,207 @@
+package Compression;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * OutputStream writing behind on its own thread: full buffers are handed
+ * to the writer while the caller fills the next one, so writing overlaps
+ * the codec. The caller waits for a free buffer when the writer falls
+ * behind; a write error of the writer is thrown by the next call.
+ * @author Hang Yuan
+ */
+public class WriteBehindOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    public static final int DEFAULT_BUFFERS = 3;
+
+    /**
+     * a buffer handed from the caller to the writer thread, or a request
+     * to flush or stop when it has no data
+     */
+    class Chunk {
+        byte[] data;
+        int len = 0;
+
+        public Chunk(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * writes filled chunks until the end chunk
+     */
+    class Writer implements Runnable {
+        public void run() {
+            try {
+                while (true) {
+                    Chunk chunk = filled.take();
+                    if (chunk == END) {
+                        return;
+                    }
+                    try {
+                        if (error == null) {
+                            if (chunk == FLUSH) {
+                                out.flush();
+                            }
+                            else {
+                                out.write(chunk.data, 0, chunk.len);
+                            }
+                        }
+                    }
+                    catch (IOException e) {
+                        error = e;
+                    }
+                    // drop the data after an error but keep the caller going
+                    if (chunk == FLUSH) {
+                        flushed.put(chunk);
+                    }
+                    else {
+                        free.put(chunk);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // closed
+            }
+        }
+    }
+
+    final Chunk FLUSH = new Chunk(null);
+    final Chunk END = new Chunk(null);
+
+    OutputStream out;
+    BlockingQueue<Chunk> free;
+    BlockingQueue<Chunk> filled;
+    BlockingQueue<Chunk> flushed = new ArrayBlockingQueue<Chunk>(1);
+    Thread writer;
+    Chunk current;
+    volatile IOException error = null;
+    boolean closed = false;
+
+    /**
+     * constructor with DEFAULT_BUFFERS buffers of DEFAULT_BUFFER_SIZE
+     * @param out stream to write, closed with this stream
+     */
+    public WriteBehindOutputStream(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+    }
+
+    /**
+     * constructor
+     * @param out stream to write, closed with this stream
+     * @param bufferSize bytes per buffer
+     * @param buffers buffers in use, at least 2
+     */
+    public WriteBehindOutputStream(OutputStream out, int bufferSize, int buffers) {
+        if (bufferSize < 1 || buffers < 2) {
+            throw new IllegalArgumentException("write behind buffers: " + buffers + " x " + bufferSize);
+        }
+        this.out = out;
+        free = new ArrayBlockingQueue<Chunk>(buffers);
+        // room for every buffer plus a flush and the end
+        filled = new ArrayBlockingQueue<Chunk>(buffers + 2);
+        for (int i = 1; i < buffers; i++) {
+            free.add(new Chunk(new byte[bufferSize]));
+        }
+        current = new Chunk(new byte[bufferSize]);
+        writer = new Thread(new Writer(), "write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        check();
+        if (current.len == current.data.length) {
+            handOff();
+        }
+        current.data[current.len++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        check();
+        while (len > 0) {
+            if (current.len == current.data.length) {
+                handOff();
+            }
+            int n = Math.min(len, current.data.length - current.len);
+            System.arraycopy(b, off, current.data, current.len, n);
+            current.len += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * write out everything buffered and flush the underlying stream,
+     * waits for the writer
+     */
+    @Override
+    public void flush() throws IOException {
+        check();
+        if (current.len > 0) {
+            handOff();
+        }
+        try {
+            filled.put(FLUSH);
+            flushed.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted flushing output");
+        }
+        check();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        }
+        finally {
+            closed = true;
+            try {
+                filled.put(END);
+                writer.join();
+            }
+            catch (InterruptedException e) {
+                writer.interrupt();
+                Thread.currentThread().interrupt();
+            }
+            out.close();
+        }
+    }
+
+    /*
+     * pass the current buffer to the writer and take a free one
+     */
+    private void handOff() throws IOException {
+        try {
+            filled.put(current);
+            current = free.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing output");
+        }
+        current.len = 0;
+        check();
+    }
+
+    private void check() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}